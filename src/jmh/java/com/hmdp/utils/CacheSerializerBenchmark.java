@@ -0,0 +1,82 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存序列化：json与binary对比，不访问redis
+ * 两种格式编码后的字节数在Setup中打印
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheSerializerBenchmark {
+
+    @Param({"json", "binary"})
+    public String format;
+
+    private CacheSerializer serializer;
+    private Shop shop;
+    private byte[] bytes;
+    private byte[] bytesWithExpire;
+
+    @Setup
+    public void setUp() {
+        serializer = "binary".equals(format) ? new BinaryCacheSerializer() : new JsonCacheSerializer();
+        shop = new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+        bytes = serializer.serialize(shop);
+        bytesWithExpire = serializer.serializeWithExpire(shop, LocalDateTime.now().plusMinutes(30));
+        System.out.println(format + " 编码后" + bytes.length + "字节，带逻辑过期时间" + bytesWithExpire.length + "字节");
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(shop);
+    }
+
+    @Benchmark
+    public Shop deserialize() {
+        return serializer.deserialize(bytes, Shop.class);
+    }
+
+    @Benchmark
+    public LocalDateTime readExpireTime() {
+        return serializer.readExpireTime(bytesWithExpire);
+    }
+
+    @Benchmark
+    public RedisData deserializeWithExpire() {
+        return serializer.deserializeWithExpire(bytesWithExpire, Shop.class);
+    }
+}
@@ -0,0 +1,79 @@
+package com.hmdp.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单id生成：redis（每次INCR）、segment（号段）与snowflake（本地生成）对比
+ * 默认连接127.0.0.1:6379的15号库，通过-Dredis.host、-Dredis.port、-Dredis.database指定
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class RedisIdWorkerBenchmark {
+    private static final String KEY_PREFIX = "bench";
+
+    @Param({"redis", "segment", "snowflake"})
+    public String mode;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate stringRedisTemplate;
+    private AnnotationConfigApplicationContext context;
+    private RedisIdWorker idWorker;
+
+    @Setup
+    public void setUp() {
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "127.0.0.1"), Integer.getInteger("redis.port", 6379));
+        config.setDatabase(Integer.getInteger("redis.database", 15));
+        connectionFactory = new LettuceConnectionFactory(config);
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("hmdp.id.mode", mode);
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.registerBean(StringRedisTemplate.class, () -> stringRedisTemplate);
+        context.register(RedisIdWorker.class);
+        context.refresh();
+        idWorker = context.getBean(RedisIdWorker.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        //关闭时释放机器id
+        context.close();
+        stringRedisTemplate.delete(stringRedisTemplate.keys("icr:" + KEY_PREFIX + ":*"));
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public long nextId() {
+        return idWorker.nextId(KEY_PREFIX);
+    }
+}
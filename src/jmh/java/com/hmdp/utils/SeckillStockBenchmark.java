@@ -0,0 +1,104 @@
+package com.hmdp.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀下单吞吐：单个库存key与分片库存对比，每次下单使用新的用户id
+ * 默认连接127.0.0.1:6379的15号库，通过-Dredis.host、-Dredis.port、-Dredis.database指定；
+ * 分片只有在集群下才能分散到多个节点，-Dredis.cluster=host:port,host:port连接集群
+ * 结束后删除压测产生的库存、下单用户和订单队列
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class SeckillStockBenchmark {
+    private static final long VOUCHER_ID = 900000001L;
+
+    @Param({"1", "8", "32"})
+    public int shards;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate stringRedisTemplate;
+    private AnnotationConfigApplicationContext context;
+    private SeckillStockManager stockManager;
+    private final AtomicLong userIds = new AtomicLong();
+    private final AtomicLong orderIds = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        String cluster = System.getProperty("redis.cluster");
+        if (cluster != null) {
+            connectionFactory = new LettuceConnectionFactory(new RedisClusterConfiguration(Arrays.asList(cluster.split(","))));
+        } else {
+            RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(
+                    System.getProperty("redis.host", "127.0.0.1"), Integer.getInteger("redis.port", 6379));
+            config.setDatabase(Integer.getInteger("redis.database", 15));
+            connectionFactory = new LettuceConnectionFactory(config);
+        }
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("hmdp.seckill.stock-shards", shards);
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+        context.registerBean(StringRedisTemplate.class, () -> stringRedisTemplate);
+        context.register(OrderStreamPartitioner.class, SeckillStockManager.class);
+        context.refresh();
+        stockManager = context.getBean(SeckillStockManager.class);
+        clean();
+        stockManager.initStock(VOUCHER_ID, Integer.MAX_VALUE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        clean();
+        context.close();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public int seckill() {
+        return stockManager.seckill(VOUCHER_ID, userIds.incrementAndGet(), orderIds.incrementAndGet());
+    }
+
+    private void clean() {
+        stringRedisTemplate.delete(Arrays.asList(
+                SECKILL_STOCK_KEY + VOUCHER_ID, SECKILL_ORDER_KEY + VOUCHER_ID, SECKILL_SHARDS_KEY + VOUCHER_ID, SECKILL_ORDER_STREAM));
+        stringRedisTemplate.opsForSet().remove(SECKILL_SHARDED_KEY, String.valueOf(VOUCHER_ID));
+        for (int i = 0; i < shards; i++) {
+            String tag = "{" + VOUCHER_ID + ":" + i + "}";
+            stringRedisTemplate.delete(Arrays.asList(SECKILL_STOCK_KEY + tag, SECKILL_ORDER_KEY + tag, SECKILL_PENDING_KEY + tag));
+        }
+    }
+}
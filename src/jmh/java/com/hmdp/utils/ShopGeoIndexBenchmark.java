@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.domain.geo.GeoReference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 附近商铺查询：本地网格索引与redis GEOSEARCH对比
+ * redis地址通过-Dredis.host、-Dredis.port指定，默认127.0.0.1:6379
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShopGeoIndexBenchmark {
+    private static final String KEY = "bench:shop:geo:1";
+    private static final long TYPE_ID = 1L;
+    private static final int QUERIES = 1024;
+    private static final int LIMIT = SystemConstants.DEFAULT_PAGE_SIZE;
+
+    @Param({"1000", "10000", "100000"})
+    public int shops;
+    @Param({"1000", "5000"})
+    public double radiusMeters;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate stringRedisTemplate;
+    private ShopGeoIndex index;
+    private final double[] xs = new double[QUERIES];
+    private final double[] ys = new double[QUERIES];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "127.0.0.1"), Integer.getInteger("redis.port", 6379)));
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        index = new ShopGeoIndex(stringRedisTemplate, "local", 0.01);
+        //店铺均匀分布在约40km见方的城区内
+        Random random = new Random(42);
+        List<RedisGeoCommands.GeoLocation<String>> locations = new ArrayList<>(shops);
+        for (long id = 1; id <= shops; id++) {
+            double x = 120.15 + (random.nextDouble() - 0.5) * 0.4;
+            double y = 30.27 + (random.nextDouble() - 0.5) * 0.4;
+            index.put(id, TYPE_ID, x, y);
+            locations.add(new RedisGeoCommands.GeoLocation<>(String.valueOf(id), new Point(x, y)));
+        }
+        stringRedisTemplate.delete(KEY);
+        stringRedisTemplate.opsForGeo().add(KEY, locations);
+        for (int i = 0; i < QUERIES; i++) {
+            xs[i] = 120.15 + (random.nextDouble() - 0.5) * 0.3;
+            ys[i] = 30.27 + (random.nextDouble() - 0.5) * 0.3;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        stringRedisTemplate.delete(KEY);
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public List<ShopGeoIndex.Neighbor> localSearch() {
+        int i = next++ & (QUERIES - 1);
+        return index.search(TYPE_ID, xs[i], ys[i], radiusMeters, LIMIT);
+    }
+
+    @Benchmark
+    public List<ShopGeoIndex.Neighbor> localNearest() {
+        int i = next++ & (QUERIES - 1);
+        return index.nearest(TYPE_ID, xs[i], ys[i], LIMIT, radiusMeters);
+    }
+
+    @Benchmark
+    public GeoResults<RedisGeoCommands.GeoLocation<String>> redisSearch() {
+        int i = next++ & (QUERIES - 1);
+        return stringRedisTemplate.opsForGeo().search(
+                KEY,
+                GeoReference.fromCoordinate(xs[i], ys[i]),
+                new Distance(radiusMeters, RedisGeoCommands.DistanceUnit.METERS),
+                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().sortAscending().limit(LIMIT)
+        );
+    }
+}
@@ -0,0 +1,37 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.RedisBloomFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 布隆过滤器配置，防止不存在的id穿透到redis和数据库
+ */
+@Configuration
+public class BloomFilterConfig {
+    @Bean
+    public RedisBloomFilter shopBloomFilter(@Value("${hmdp.bloom.shop.expected-insertions:1000000}") long expectedInsertions,
+                                            @Value("${hmdp.bloom.shop.fpp:0.01}") double fpp,
+                                            @Value("${hmdp.bloom.shop.max-bytes:4194304}") long maxBytes,
+                                            StringRedisTemplate stringRedisTemplate) {
+        return new RedisBloomFilter("shop", expectedInsertions, fpp, maxBytes, stringRedisTemplate);
+    }
+
+    @Bean
+    public RedisBloomFilter userBloomFilter(@Value("${hmdp.bloom.user.expected-insertions:10000000}") long expectedInsertions,
+                                            @Value("${hmdp.bloom.user.fpp:0.01}") double fpp,
+                                            @Value("${hmdp.bloom.user.max-bytes:16777216}") long maxBytes,
+                                            StringRedisTemplate stringRedisTemplate) {
+        return new RedisBloomFilter("user", expectedInsertions, fpp, maxBytes, stringRedisTemplate);
+    }
+
+    @Bean
+    public RedisBloomFilter revokedTokenBloomFilter(@Value("${hmdp.bloom.revoked-token.expected-insertions:1000000}") long expectedInsertions,
+                                                    @Value("${hmdp.bloom.revoked-token.fpp:0.01}") double fpp,
+                                                    @Value("${hmdp.bloom.revoked-token.max-bytes:4194304}") long maxBytes,
+                                                    StringRedisTemplate stringRedisTemplate) {
+        return new RedisBloomFilter("revoked-token", expectedInsertions, fpp, maxBytes, stringRedisTemplate);
+    }
+}
@@ -0,0 +1,35 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.BinaryCacheSerializer;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.CacheSerializer;
+import com.hmdp.utils.JsonCacheSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 缓存配置
+ */
+@Configuration
+public class CacheConfig {
+    /**
+     * 缓存值的序列化方式，json或binary
+     */
+    @Bean
+    public CacheSerializer cacheSerializer(@Value("${hmdp.cache.serializer:json}") String serializer) {
+        if ("binary".equalsIgnoreCase(serializer)) {
+            return new BinaryCacheSerializer();
+        }
+        return new JsonCacheSerializer();
+    }
+
+    /**
+     * 逻辑过期缓存的重建线程池
+     */
+    @Bean(destroyMethod = "shutdown")
+    public CacheRebuildExecutor cacheRebuildExecutor(@Value("${hmdp.cache.rebuild.threads:10}") int threads,
+                                                     @Value("${hmdp.cache.rebuild.queue-capacity:1000}") int queueCapacity) {
+        return new CacheRebuildExecutor(threads, queueCapacity);
+    }
+}
@@ -1,13 +1,19 @@
 package com.hmdp.config;
 
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.interceptor.AdminInterceptor;
 import com.hmdp.interceptor.LoginInterceptor;
 import com.hmdp.interceptor.RefreshTokenInterceptor;
+import com.hmdp.utils.LoginSessionCache;
+import com.hmdp.utils.SignedTokenManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.annotation.Resource;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * mvc配置
@@ -16,7 +22,13 @@ import javax.annotation.Resource;
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private LoginSessionCache loginSessionCache;
+    @Resource
+    private SignedTokenManager signedTokenManager;
+
+    //管理员用户id，多个用逗号分隔，为空时所有管理接口都不可访问
+    @Value("${hmdp.admin.user-ids:}")
+    private String adminUserIds;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
@@ -32,9 +44,17 @@ public class MvcConfig implements WebMvcConfigurer {
                         , "/voucher/**"
                 )
                 .order(1);
+        //管理接口拦截器
+        Set<Long> admins = StrUtil.split(adminUserIds, ',', true, true).stream()
+                .map(Long::valueOf)
+                .collect(Collectors.toSet());
+        registry
+                .addInterceptor(new AdminInterceptor(admins))
+                .addPathPatterns("/voucher-order/dlq/**", "/voucher/seckill/stock/**")
+                .order(2);
         //Token续命刷新器
         registry
-                .addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate))
+                .addInterceptor(new RefreshTokenInterceptor(loginSessionCache, signedTokenManager))
                 .addPathPatterns("/**")
                 .order(0);
     }
@@ -0,0 +1,55 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.LocalCacheManager;
+import com.hmdp.utils.LoginSessionCache;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.RedisLockSubscriber;
+import com.hmdp.utils.SeckillSoldOutCache;
+import com.hmdp.utils.ShopGeoIndex;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOCK_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_CHANNEL;
+
+/**
+ * redis发布订阅配置
+ */
+@Configuration
+public class RedisListenerConfig {
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       LocalCacheManager localCacheManager,
+                                                                       LoginSessionCache loginSessionCache,
+                                                                       SeckillSoldOutCache seckillSoldOutCache,
+                                                                       RedisLockSubscriber redisLockSubscriber,
+                                                                       ShopGeoIndex shopGeoIndex,
+                                                                       List<RedisBloomFilter> bloomFilters) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        //本地缓存失效通知
+        container.addMessageListener(localCacheManager, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        //登出通知
+        container.addMessageListener(loginSessionCache, new ChannelTopic(LOGIN_INVALIDATE_CHANNEL));
+        //秒杀券售罄及补充库存通知
+        container.addMessageListener(seckillSoldOutCache, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+        //分布式锁释放通知
+        container.addMessageListener(redisLockSubscriber, new PatternTopic(LOCK_CHANNEL + "*"));
+        //店铺坐标变更通知
+        container.addMessageListener(shopGeoIndex, new ChannelTopic(SHOP_GEO_CHANNEL));
+        //布隆过滤器新增元素通知
+        for (RedisBloomFilter bloomFilter : bloomFilters) {
+            container.addMessageListener(bloomFilter, new ChannelTopic(bloomFilter.getChannel()));
+        }
+        return container;
+    }
+}
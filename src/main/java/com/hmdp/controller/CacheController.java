@@ -0,0 +1,41 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存监控
+ * </p>
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    /**
+     * 查询本地缓存各前缀的命中统计
+     * @return 统计数据
+     */
+    @GetMapping("/stats")
+    public Result stats() {
+        return Result.ok(cacheClient.localCacheStats());
+    }
+
+    /**
+     * 查询缓存重建线程池的队列深度、拒绝次数等指标
+     * @return 统计数据
+     */
+    @GetMapping("/rebuild/stats")
+    public Result rebuildStats() {
+        return Result.ok(cacheClient.rebuildStats());
+    }
+}
@@ -44,9 +44,7 @@ public class ShopController {
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
         // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        return shopService.saveShop(shop);
     }
 
     /**
@@ -63,20 +61,23 @@ public class ShopController {
     /**
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
-     * @param current 页码
+     * @param current 页码，按距离排序时不使用
+     * @param x 经度，与纬度同时传入时按距离由近到远排序
+     * @param y 纬度
+     * @param lastDistance 按距离排序时上一页最后一家店铺的距离，第一页不传
+     * @param lastId 上一页最后一家店铺的id
      * @return 商铺列表
      */
     @GetMapping("/of/type")
     public Result queryShopByType(
             @RequestParam("typeId") Integer typeId,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "x", required = false) Double x,
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "lastDistance", required = false) Double lastDistance,
+            @RequestParam(value = "lastId", required = false) Long lastId
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .eq("type_id", typeId)
-                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByType(typeId, current, x, y, lastDistance, lastId);
     }
 
     /**
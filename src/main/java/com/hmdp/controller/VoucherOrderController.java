@@ -3,10 +3,7 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
 
@@ -28,4 +25,34 @@ public class VoucherOrderController {
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return voucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 查询死信队列中处理失败的订单消息
+     * @param count 最多返回的条数
+     * @return 消息内容及失败原因
+     */
+    @GetMapping("dlq")
+    public Result queryDeadLetters(@RequestParam(value = "count", defaultValue = "20") Integer count) {
+        return voucherOrderService.queryDeadLetters(count);
+    }
+
+    /**
+     * 重新投递死信消息到订单队列
+     * @param id 死信消息id
+     * @return 无
+     */
+    @PostMapping("dlq/{id}/replay")
+    public Result replayDeadLetter(@PathVariable("id") String id) {
+        return voucherOrderService.replayDeadLetter(id);
+    }
+
+    /**
+     * 丢弃死信消息
+     * @param id 死信消息id
+     * @return 无
+     */
+    @DeleteMapping("dlq/{id}")
+    public Result discardDeadLetter(@PathVariable("id") String id) {
+        return voucherOrderService.discardDeadLetter(id);
+    }
 }
@@ -0,0 +1,15 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 按分数滚动分页的结果，下一页从minScore和lastId之后开始
+ */
+@Data
+public class ScoreScrollResult {
+    private List<?> list;
+    private Double minScore;
+    private Long lastId;
+}
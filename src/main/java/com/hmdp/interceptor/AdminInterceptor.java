@@ -0,0 +1,37 @@
+package com.hmdp.interceptor;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.UserHolder;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Set;
+
+/**
+ * 管理接口拦截器，只允许配置的管理员用户访问
+ */
+public class AdminInterceptor implements HandlerInterceptor {
+
+    private final Set<Long> adminUserIds;
+
+    public AdminInterceptor(Set<Long> adminUserIds) {
+        this.adminUserIds = adminUserIds;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        UserDTO user = UserHolder.getUser();
+        if (user == null) {
+            //未登录
+            response.setStatus(401);
+            return false;
+        }
+        if (!adminUserIds.contains(user.getId())) {
+            //不是管理员
+            response.setStatus(403);
+            return false;
+        }
+        return true;
+    }
+}
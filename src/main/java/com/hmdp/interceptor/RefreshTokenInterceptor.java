@@ -1,24 +1,24 @@
 package com.hmdp.interceptor;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
-import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.LoginSessionCache;
+import com.hmdp.utils.SignedTokenManager;
 import com.hmdp.utils.UserHolder;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.HandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 public class RefreshTokenInterceptor implements HandlerInterceptor {
 
-    private StringRedisTemplate stringRedisTemplate;
+    private LoginSessionCache loginSessionCache;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    private SignedTokenManager signedTokenManager;
+
+    public RefreshTokenInterceptor(LoginSessionCache loginSessionCache, SignedTokenManager signedTokenManager) {
+        this.loginSessionCache = loginSessionCache;
+        this.signedTokenManager = signedTokenManager;
     }
 
     @Override
@@ -28,21 +28,16 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
         if (StrUtil.isBlank(token)) {
             return true;
         }
-        //2.基于token获取redis的用户
-        String key = RedisConstants.LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+        //2.基于token获取用户：签名模式下本地校验签名，否则优先读取本地缓存，必要时刷新expire
+        UserDTO userDTO = signedTokenManager.isEnabled()
+                ? signedTokenManager.verify(token)
+                : loginSessionCache.get(token);
         //判断用户是否存在
-        if (userMap.isEmpty()) {
+        if (userDTO == null) {
             return true;
         }
-
-        //3.查询到的user转换为userDTO
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
-
-        //4.保存用户到threadlocal
+        //3.保存用户到threadlocal
         UserHolder.saveUser(userDTO);
-        //5.刷新expire
-        stringRedisTemplate.expire(key, RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
         return true;
     }
 
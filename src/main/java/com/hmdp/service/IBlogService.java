@@ -14,7 +14,13 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IBlogService extends IService<Blog> {
 
-    Result queryHotBlog(Integer current);
+    Result queryHotBlog(Double max, Long lastId);
+
+    Result queryMyBlog(Integer current);
+
+    Result saveBlog(Blog blog);
+
+    Result queryBlogOfFollow(Long max, Integer offset);
 
     Result queryBlogById(Long id);
 
@@ -17,4 +17,8 @@ public interface IShopService extends IService<Shop> {
     Result update(Shop shop);
 
     Result QueryById(Long id);
+
+    Result saveShop(Shop shop);
+
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y, Double lastDistance, Long lastId);
 }
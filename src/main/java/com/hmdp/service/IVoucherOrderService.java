@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -17,4 +19,12 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
     Result seckillVoucher(Long voucherId);
 
     void createVoucherOrder(VoucherOrder voucherOrder);
+
+    void createVoucherOrders(List<VoucherOrder> voucherOrders);
+
+    Result queryDeadLetters(Integer count);
+
+    Result replayDeadLetter(String id);
+
+    Result discardDeadLetter(String id);
 }
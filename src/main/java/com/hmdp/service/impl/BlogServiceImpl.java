@@ -1,29 +1,67 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ScoreScrollResult;
+import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
+import com.hmdp.service.IFollowService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BlogLikeResolver;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.FeedManager;
+import com.hmdp.utils.ILock;
 import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.SimpleRedisLock;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_REBUILDING_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_DELTA_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKE_FLUSHING_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_TTL;
+
 /**
  * <p>
  *  服务实现类
@@ -32,29 +70,216 @@ import java.util.stream.Collectors;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
     @Resource
     private IUserService userService;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private BlogLikeResolver blogLikeResolver;
+    @Resource
+    private IFollowService followService;
+    @Resource
+    private FeedManager feedManager;
+
+    //每条UPDATE语句更新的博客数
+    @Value("${hmdp.blog.like.flush-batch-size:500}")
+    private int flushBatchSize;
+    //发布时间每晚该秒数相当于少一个赞，0表示只按点赞数排行
+    @Value("${hmdp.blog.hot.decay-seconds:0}")
+    private long decaySeconds;
+    //排行中最多保留的博客数
+    @Value("${hmdp.blog.hot.max-size:10000}")
+    private long hotMaxSize;
+    //只校准该天数内发布的博客，0表示不限制
+    @Value("${hmdp.blog.hot.window-days:30}")
+    private long hotWindowDays;
+    @Value("${hmdp.blog.hot.reconcile-interval-ms:600000}")
+    private long reconcileIntervalMs;
+    //粉丝数达到该值的用户发布博客时不再推送，改为粉丝拉取
+    @Value("${hmdp.feed.celebrity-threshold:10000}")
+    private long celebrityThreshold;
+
+    //热度时间分的起点，2025年1月1日00：00
+    private static final long HOT_BEGIN_SECOND = 1735689600L;
+    private static final int RECONCILE_BATCH_SIZE = 1000;
+
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+    private static final DefaultRedisScript<Long> HOT_RECONCILE_SCRIPT;
+    private static final DefaultRedisScript<List> HOT_PAGE_SCRIPT;
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+        HOT_RECONCILE_SCRIPT = new DefaultRedisScript<>();
+        HOT_RECONCILE_SCRIPT.setLocation(new ClassPathResource("hotReconcile.lua"));
+        HOT_RECONCILE_SCRIPT.setResultType(Long.class);
+        HOT_PAGE_SCRIPT = new DefaultRedisScript<>();
+        HOT_PAGE_SCRIPT.setLocation(new ClassPathResource("hotPage.lua"));
+        HOT_PAGE_SCRIPT.setResultType(List.class);
+    }
+
+    //校准耗时较长，使用独立线程，不占用定时任务线程
+    private final ScheduledExecutorService reconcileExecutor =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("blog-hot-reconcile-", true));
+
+    @PostConstruct
+    public void init() {
+        reconcileExecutor.scheduleWithFixedDelay(this::reconcileHotBlogs, reconcileIntervalMs, reconcileIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        reconcileExecutor.shutdownNow();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Result queryHotBlog(Double max, Long lastId) {
+        //按上一页最后一篇的热度和id继续查询，排行变化时不会重复或遗漏
+        boolean first = max == null || lastId == null;
+        List<Object> page = stringRedisTemplate.execute(
+                HOT_PAGE_SCRIPT,
+                Collections.singletonList(BLOG_HOT_KEY),
+                first ? "+inf" : String.valueOf(max), first ? "" : lastId.toString(),
+                String.valueOf(SystemConstants.MAX_PAGE_SIZE)
+        );
+        List<Blog> records;
+        Double minScore;
+        Long minId;
+        if (page != null && !page.isEmpty()) {
+            // 根据id批量查询，保持排行顺序
+            List<Long> blogIds = new ArrayList<>(page.size() / 2);
+            for (int i = 0; i < page.size(); i += 2) {
+                blogIds.add(Long.valueOf(page.get(i).toString()));
+            }
+            minScore = Double.valueOf(page.get(page.size() - 1).toString());
+            minId = blogIds.get(blogIds.size() - 1);
+            Map<Long, Blog> blogs = listByIds(blogIds).stream()
+                    .collect(Collectors.toMap(Blog::getId, Function.identity()));
+            records = blogIds.stream().map(blogs::get).filter(Objects::nonNull).collect(Collectors.toList());
+        } else if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_HOT_KEY))) {
+            return Result.ok();
+        } else {
+            //排行尚未建立时按点赞数和id查询数据库
+            records = query()
+                    .and(!first, wrapper -> wrapper.lt("liked", max).or(w -> w.eq("liked", max).lt("id", lastId)))
+                    .orderByDesc("liked", "id")
+                    .last("limit " + SystemConstants.MAX_PAGE_SIZE)
+                    .list();
+            if (records.isEmpty()) {
+                return Result.ok();
+            }
+            Blog last = records.get(records.size() - 1);
+            minScore = last.getLiked() == null ? 0 : last.getLiked().doubleValue();
+            minId = last.getId();
+        }
+        // 批量查询用户
+        queryBlogUsers(records);
+        //加上尚未同步到数据库的点赞数
+        addPendingLikes(records);
+        //查询是否被当前用户点赞
+        isBlogsLiked(records);
+
+        ScoreScrollResult r = new ScoreScrollResult();
+        r.setList(records);
+        r.setMinScore(minScore);
+        r.setLastId(minId);
+        return Result.ok(r);
+    }
+
     @Override
-    public Result queryHotBlog(Integer current) {
+    public Result queryMyBlog(Integer current) {
+        // 获取登录用户
+        UserDTO user = UserHolder.getUser();
         // 根据用户查询
         Page<Blog> page = query()
-                .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+                .eq("user_id", user.getId()).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            this.isBlogLiked(blog);
-            this.queryBlogUser(blog);
-        });
-        //查询是否被当前用户点赞
+        addPendingLikes(records);
+        isBlogsLiked(records);
         return Result.ok(records);
     }
 
+    @Override
+    public Result saveBlog(Blog blog) {
+        // 获取登录用户
+        UserDTO user = UserHolder.getUser();
+        blog.setUserId(user.getId());
+        // 保存探店博文
+        boolean isSuccess = save(blog);
+        if (!isSuccess) {
+            return Result.fail("新增笔记失败！");
+        }
+        //加入热门排行
+        stringRedisTemplate.opsForZSet().add(BLOG_HOT_KEY, blog.getId().toString(), hotScore(0, LocalDateTime.now()));
+        //在后台推送到关注流
+        Long userId = user.getId();
+        Long blogId = blog.getId();
+        long timestamp = System.currentTimeMillis();
+        feedManager.submit(() -> publishToFeed(userId, blogId, timestamp));
+        // 返回id
+        return Result.ok(blog.getId());
+    }
+
+    @Override
+    public Result queryBlogOfFollow(Long max, Integer offset) {
+        // 获取当前用户
+        Long userId = UserHolder.getUser().getId();
+        //合并收件箱和所关注大V的发件箱，查询时间戳不大于max的博客，跳过上一页末尾与max时间相同的offset条
+        List<Long> celebrityIds = feedManager.followedCelebrities(userId);
+        List<ZSetOperations.TypedTuple<String>> typedTuples =
+                feedManager.read(userId, celebrityIds, max, offset, SystemConstants.DEFAULT_PAGE_SIZE);
+        if (typedTuples.isEmpty()) {
+            return Result.ok();
+        }
+        //解析博客id，以及本页最小时间戳和与其相同的条数
+        List<Long> ids = new ArrayList<>(typedTuples.size());
+        long minTime = 0;
+        int os = 1;
+        for (ZSetOperations.TypedTuple<String> tuple : typedTuples) {
+            ids.add(Long.valueOf(tuple.getValue()));
+            long time = tuple.getScore().longValue();
+            if (time == minTime) {
+                os++;
+            } else {
+                minTime = time;
+                os = 1;
+            }
+        }
+        //本页都与上一页末尾时间相同时，需要累加上一页的偏移量
+        if (minTime == max) {
+            os += offset;
+        }
+        //根据id批量查询，保持时间顺序
+        Map<Long, Blog> blogs = listByIds(ids).stream()
+                .collect(Collectors.toMap(Blog::getId, Function.identity()));
+        List<Blog> records = ids.stream().map(blogs::get).filter(Objects::nonNull).collect(Collectors.toList());
+        queryBlogUsers(records);
+        addPendingLikes(records);
+        isBlogsLiked(records);
+
+        ScrollResult r = new ScrollResult();
+        r.setList(records);
+        r.setOffset(os);
+        r.setMinTime(minTime);
+        return Result.ok(r);
+    }
+
+    //普通用户推送到粉丝收件箱，粉丝数达到阈值的用户只写入发件箱，由粉丝读取时拉取
+    private void publishToFeed(Long userId, Long blogId, long timestamp) {
+        if (feedManager.isCelebrity(userId) || followService.countFollowers(userId) >= celebrityThreshold) {
+            feedManager.pushToOutbox(userId, blogId, timestamp);
+            return;
+        }
+        feedManager.pushToInboxes(followService.queryFollowerIds(userId), blogId, timestamp);
+    }
+
     @Override
     public Result queryBlogById(Long id) {
         // 1.查询blog
@@ -64,45 +289,206 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         }
         // 2.查询blog有关的用户
         queryBlogUser(blog);
+        addPendingLikes(Collections.singletonList(blog));
         //查询是否被当前用户点赞
-        isBlogLiked(blog);
+        isBlogsLiked(Collections.singletonList(blog));
         return Result.ok(blog);
     }
 
-    private void isBlogLiked(Blog blog) {
+    //一次往返查询当前用户是否点赞过这些博客
+    private void isBlogsLiked(List<Blog> blogs) {
         UserDTO user = UserHolder.getUser();
-        if (user ==null){
+        if (user ==null || blogs.isEmpty()){
             return;
         }
-        Long userId = user.getId();
-        String key = "blog:like:" +blog.getId();
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        blog.setIsLike(score!=null);
-
+        List<Long> ids = blogs.stream().map(Blog::getId).collect(Collectors.toList());
+        Set<Long> liked = blogLikeResolver.likedBlogIds(user.getId(), ids);
+        for (Blog blog : blogs) {
+            blog.setIsLike(liked.contains(blog.getId()));
+        }
     }
 
     @Override
     public Result likeBlog(Long id) {
         //获取当前用户
         Long userId = UserHolder.getUser().getId();
-        String key = "blog:like:" +id;
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-        //如果没点过赞，先更新数据库然后添加入redis
-        if (score==null){
-            boolean isSuccess = update().setSql("liked = liked + 1").eq("id", id).update();
-            if (isSuccess){
-                stringRedisTemplate.opsForZSet().add(key,userId.toString(),System.currentTimeMillis());
+        //在redis中点赞或取消点赞并记录点赞数增量，由flushLikeDeltas定时同步到数据库
+        Long result = stringRedisTemplate.execute(
+                LIKE_SCRIPT,
+                Arrays.asList(RedisConstants.BLOG_LIKED_KEY + id, BLOG_LIKE_DELTA_KEY, BLOG_HOT_KEY, BLOG_HOT_REBUILDING_KEY),
+                userId.toString(), id.toString(), String.valueOf(System.currentTimeMillis())
+        );
+        if (result != null) {
+            blogLikeResolver.onLiked(userId, id, result > 0);
+        }
+        return Result.ok();
+    }
+
+    /**
+     * 把累计的点赞数增量批量写入数据库
+     * 先把增量hash改名为flushing再同步，同步期间的新点赞记录到新的增量hash中；
+     * 每批写入后删除对应的field，中途失败时下次先补完flushing中剩余的增量
+     */
+    @Scheduled(fixedDelayString = "${hmdp.blog.like.flush-interval-ms:5000}")
+    public void flushLikeDeltas() {
+        ILock lock = new SimpleRedisLock("blog:like:flush", stringRedisTemplate);
+        if (!lock.tryLock(60)) {
+            return;
+        }
+        try {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKE_FLUSHING_KEY))) {
+                //增量hash只会在这里被改名，存在时改名不会失败
+                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKE_DELTA_KEY))) {
+                    return;
+                }
+                stringRedisTemplate.rename(BLOG_LIKE_DELTA_KEY, BLOG_LIKE_FLUSHING_KEY);
+            }
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(BLOG_LIKE_FLUSHING_KEY);
+            Map<Long, Long> batch = new LinkedHashMap<>();
+            List<Object> fields = new ArrayList<>();
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                long delta = Long.parseLong(entry.getValue().toString());
+                if (delta != 0) {
+                    batch.put(Long.valueOf(entry.getKey().toString()), delta);
+                }
+                fields.add(entry.getKey());
+                if (fields.size() >= flushBatchSize) {
+                    flushBatch(batch, fields);
+                }
             }
+            if (!fields.isEmpty()) {
+                flushBatch(batch, fields);
+            }
+            stringRedisTemplate.delete(BLOG_LIKE_FLUSHING_KEY);
+        } catch (Exception e) {
+            log.error("同步点赞数失败", e);
+        } finally {
+            lock.unLock();
         }
-        //如果点过赞了，先更新数据库然后移除入redis
-        else {
-            boolean isSuccess = update().setSql("liked = liked -1").eq("id", id).update();
-            if (isSuccess){
-                stringRedisTemplate.opsForZSet().remove(key,userId.toString());
+    }
+
+    /**
+     * 按数据库中的点赞数和未同步的增量重建热门排行，修正增量更新丢失或遗漏的博客
+     * 在临时key中重建完成后再替换，重建期间排行照常可用；每批博客的热度在脚本中与未同步的增量一起写入，
+     * 之后的点赞由点赞脚本同时累加到临时key，替换时不会丢失重建期间的点赞
+     * 校准期间暂停同步点赞数，避免数据库中的点赞数与增量重复计算或遗漏
+     */
+    public void reconcileHotBlogs() {
+        ILock lock = new SimpleRedisLock("blog:hot:reconcile", stringRedisTemplate);
+        if (!lock.tryLock(600)) {
+            return;
+        }
+        ILock flushLock = new SimpleRedisLock("blog:like:flush", stringRedisTemplate);
+        try {
+            if (!flushLock.tryLock(10, 600, TimeUnit.SECONDS)) {
+                return;
+            }
+            try {
+                rebuildHotBlogs();
+            } finally {
+                flushLock.unLock();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("校准热门博客排行失败", e);
+            stringRedisTemplate.delete(BLOG_HOT_REBUILDING_KEY);
+        } finally {
+            lock.unLock();
         }
+    }
 
-        return Result.ok();
+    private void rebuildHotBlogs() {
+        stringRedisTemplate.delete(BLOG_HOT_REBUILDING_KEY);
+        List<String> keys = Arrays.asList(BLOG_HOT_REBUILDING_KEY, BLOG_LIKE_DELTA_KEY, BLOG_LIKE_FLUSHING_KEY);
+        //只扫描热度窗口内的博客，id随发布时间递增，先找到窗口内的第一篇博客，之后按主键分批
+        LocalDateTime since = hotWindowDays > 0 ? LocalDateTime.now().minusDays(hotWindowDays) : null;
+        long lastId = 0;
+        if (since != null) {
+            Blog first = query().select("id").ge("create_time", since).orderByAsc("id").last("limit 1").one();
+            if (first == null) {
+                stringRedisTemplate.delete(BLOG_HOT_KEY);
+                return;
+            }
+            lastId = first.getId() - 1;
+        }
+        while (true) {
+            List<Blog> blogs = query()
+                    .select("id", "liked", "create_time")
+                    .gt("id", lastId)
+                    .ge(since != null, "create_time", since)
+                    .orderByAsc("id")
+                    .last("limit " + RECONCILE_BATCH_SIZE)
+                    .list();
+            if (blogs.isEmpty()) {
+                break;
+            }
+            List<String> args = new ArrayList<>(blogs.size() * 2 + 1);
+            args.add(String.valueOf(hotMaxSize));
+            for (Blog blog : blogs) {
+                args.add(blog.getId().toString());
+                args.add(String.valueOf(hotScore(blog.getLiked(), blog.getCreateTime())));
+            }
+            //每批之后裁剪，重建过程中占用的内存也有上限
+            stringRedisTemplate.execute(HOT_RECONCILE_SCRIPT, keys, args.toArray());
+            lastId = blogs.get(blogs.size() - 1).getId();
+        }
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_HOT_REBUILDING_KEY))) {
+            stringRedisTemplate.rename(BLOG_HOT_REBUILDING_KEY, BLOG_HOT_KEY);
+        } else {
+            stringRedisTemplate.delete(BLOG_HOT_KEY);
+        }
+    }
+
+    //热度 = 点赞数 + 发布时间折算的分数，越新的博客分数越高，相当于旧博客随时间线性衰减
+    private double hotScore(Integer liked, LocalDateTime createTime) {
+        double score = liked == null ? 0 : liked;
+        if (decaySeconds > 0 && createTime != null) {
+            long second = createTime.atZone(ZoneId.systemDefault()).toEpochSecond();
+            score += (double) (second - HOT_BEGIN_SECOND) / decaySeconds;
+        }
+        return score;
+    }
+
+    private void flushBatch(Map<Long, Long> batch, List<Object> fields) {
+        if (!batch.isEmpty()) {
+            baseMapper.updateLikedBatch(batch);
+        }
+        stringRedisTemplate.opsForHash().delete(BLOG_LIKE_FLUSHING_KEY, fields.toArray());
+        batch.clear();
+        fields.clear();
+    }
+
+    //数据库中的点赞数加上redis中尚未同步的增量，包括正在同步的部分
+    private void addPendingLikes(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        Object[] ids = blogs.stream().map(blog -> blog.getId().toString()).toArray();
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            String[] fields = Arrays.copyOf(ids, ids.length, String[].class);
+            stringConnection.hMGet(BLOG_LIKE_DELTA_KEY, fields);
+            stringConnection.hMGet(BLOG_LIKE_FLUSHING_KEY, fields);
+            return null;
+        });
+        Map<Long, Long> deltas = new HashMap<>();
+        for (Object result : results) {
+            List<?> values = (List<?>) result;
+            for (int i = 0; i < blogs.size(); i++) {
+                Object value = values.get(i);
+                if (value != null) {
+                    deltas.merge(blogs.get(i).getId(), Long.parseLong(value.toString()), Long::sum);
+                }
+            }
+        }
+        for (Blog blog : blogs) {
+            Long delta = deltas.get(blog.getId());
+            if (delta != null) {
+                int liked = blog.getLiked() == null ? 0 : blog.getLiked();
+                blog.setLiked((int) Math.max(0, liked + delta));
+            }
+        }
     }
 
     @Override
@@ -115,21 +501,41 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         }
         //解析用户的id
         List<Long> ids = Top5.stream().map(Long::valueOf).collect(Collectors.toList());
-        String idsString = StrUtil.join(",", ids);
-        //根据用户id查询id
-        List<UserDTO> userDTOS = userService.query().in("id",id).last("ORDER BY FIELD(id,"+idsString+")").list()
-                .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+        //根据用户id批量查询用户，保持点赞顺序
+        Map<Long, UserDTO> users = cacheClient.queryManyWithPassThrough(
+                CACHE_USER_KEY, ids, UserDTO.class, this::queryUserDTOs, CACHE_USER_TTL, TimeUnit.MINUTES);
+        List<UserDTO> userDTOS = ids.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
         //返回
         return Result.ok(userDTOS);
     }
 
     private void queryBlogUser(Blog blog) {
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
+        queryBlogUsers(Collections.singletonList(blog));
+    }
+
+    //一次批量查询一页博客的作者信息
+    private void queryBlogUsers(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        Set<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toSet());
+        Map<Long, UserDTO> users = cacheClient.queryManyWithPassThrough(
+                CACHE_USER_KEY, userIds, UserDTO.class, this::queryUserDTOs, CACHE_USER_TTL, TimeUnit.MINUTES);
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
+    }
+
+    private Map<Long, UserDTO> queryUserDTOs(Collection<Long> ids) {
+        return userService.listByIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class)));
     }
 
 }
@@ -1,11 +1,47 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.BooleanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Follow;
+import com.hmdp.entity.User;
 import com.hmdp.mapper.FollowMapper;
 import com.hmdp.service.IFollowService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.HierarchicalLock;
+import com.hmdp.utils.ILock;
+import com.hmdp.utils.RedisLockSubscriber;
+import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
 /**
  * <p>
  *  服务实现类
@@ -14,7 +50,225 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> implements IFollowService {
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private IUserService userService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private RedisLockSubscriber redisLockSubscriber;
+
+    //两人关注数都超过该值时改为抽样求共同关注
+    @Value("${hmdp.follow.common.max-intersect:1000}")
+    private long maxIntersect;
+    //抽样模式下从较小的关注集合中随机取出的数量
+    @Value("${hmdp.follow.common.sample-size:200}")
+    private long sampleSize;
+
+    private static final int SYNC_BATCH_SIZE = 1000;
+    private static final DefaultRedisScript<Long> FOLLOW_SCRIPT;
+    static {
+        FOLLOW_SCRIPT = new DefaultRedisScript<>();
+        FOLLOW_SCRIPT.setLocation(new ClassPathResource("follow.lua"));
+        FOLLOW_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 首次启动时把tb_follow导入redis，之后关注关系以redis集合为准回答查询
+     * 导入时执行与关注相同的脚本，重复导入不会重复计数；导入完成前其他节点阻塞启动，不会用不完整的集合回答查询
+     */
+    @PostConstruct
+    public void init() throws InterruptedException {
+        ILock lock = new SimpleRedisLock("follow:sync", stringRedisTemplate);
+        //其他节点正在导入时等待导入完成，导入节点宕机后锁过期，由本节点接管导入
+        while (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(FOLLOW_SYNCED_KEY))) {
+            if (!lock.tryLock(600)) {
+                Thread.sleep(1000);
+                continue;
+            }
+            try {
+                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(FOLLOW_SYNCED_KEY))) {
+                    importFollows();
+                }
+            } finally {
+                lock.unLock();
+            }
+        }
+    }
+
+    private void importFollows() {
+        String script = FOLLOW_SCRIPT.getScriptAsString();
+        long lastId = 0;
+        while (true) {
+            List<Follow> follows = query()
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + SYNC_BATCH_SIZE)
+                    .list();
+            if (follows.isEmpty()) {
+                break;
+            }
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (Follow follow : follows) {
+                    List<String> keys = followKeys(follow.getUserId(), follow.getFollowUserId());
+                    stringConnection.eval(script, ReturnType.INTEGER, keys.size(),
+                            keys.get(0), keys.get(1), keys.get(2), keys.get(3),
+                            follow.getUserId().toString(), follow.getFollowUserId().toString(), "1");
+                }
+                return null;
+            });
+            lastId = follows.get(follows.size() - 1).getId();
+        }
+        stringRedisTemplate.opsForValue().set(FOLLOW_SYNCED_KEY, String.valueOf(System.currentTimeMillis()));
+        log.info("关注关系已导入redis");
+    }
+
+    @Override
+    public Result follow(Long followUserId, Boolean isFollow) {
+        Long userId = UserHolder.getUser().getId();
+        if (userId.equals(followUserId)) {
+            return Result.fail("不能关注自己！");
+        }
+        boolean follow = BooleanUtil.isTrue(isFollow);
+        //同一对用户的关注和取关串行执行，数据库和redis按相同的顺序更新，不会出现两边不一致
+        String lockName = "follow:" + userId + ":" + followUserId;
+        ILock lock = new HierarchicalLock(lockName, new SimpleRedisLock(lockName, stringRedisTemplate, redisLockSubscriber));
+        try {
+            if (!lock.tryLock(1, -1, TimeUnit.SECONDS)) {
+                return Result.fail("操作太频繁，请稍后再试");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.fail("操作太频繁，请稍后再试");
+        }
+        try {
+            if (follow) {
+                //已关注时不重复插入，唯一索引(user_id, follow_user_id)兜底
+                if (isFollowing(userId, followUserId)) {
+                    return Result.ok();
+                }
+                try {
+                    save(new Follow()
+                            .setUserId(userId)
+                            .setFollowUserId(followUserId));
+                } catch (DuplicateKeyException e) {
+                    //数据库中已有记录但redis中没有，仍执行脚本补齐，脚本幂等
+                    log.debug("重复关注：{} -> {}", userId, followUserId);
+                }
+            } else {
+                remove(new QueryWrapper<Follow>()
+                        .eq("user_id", userId)
+                        .eq("follow_user_id", followUserId));
+            }
+            //先写数据库再同步到redis，关注集合和计数在脚本中一起更新
+            stringRedisTemplate.execute(FOLLOW_SCRIPT, followKeys(userId, followUserId),
+                    userId.toString(), followUserId.toString(), follow ? "1" : "0");
+        } finally {
+            lock.unLock();
+        }
+        return Result.ok();
+    }
+
+    @Override
+    public Result isFollow(Long followUserId) {
+        Long userId = UserHolder.getUser().getId();
+        return Result.ok(isFollowing(userId, followUserId));
+    }
+
+    @Override
+    public Result followCommons(Long id) {
+        Long userId = UserHolder.getUser().getId();
+        String key1 = FOLLOWS_KEY + userId;
+        String key2 = FOLLOWS_KEY + id;
+        List<Object> sizes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.sCard(key1);
+            stringConnection.sCard(key2);
+            return null;
+        });
+        long size1 = (Long) sizes.get(0);
+        long size2 = (Long) sizes.get(1);
+        if (size1 == 0 || size2 == 0) {
+            return Result.ok(Collections.emptyList());
+        }
+        Set<String> common;
+        if (Math.min(size1, size2) <= maxIntersect) {
+            common = stringRedisTemplate.opsForSet().intersect(key1, key2);
+        } else {
+            //集合较大时SINTER耗时较长，改为从较小的集合中抽样，在较大的集合中批量判断
+            String small = size1 <= size2 ? key1 : key2;
+            String large = size1 <= size2 ? key2 : key1;
+            Set<String> sample = stringRedisTemplate.opsForSet().distinctRandomMembers(small, sampleSize);
+            if (sample == null || sample.isEmpty()) {
+                return Result.ok(Collections.emptyList());
+            }
+            Map<Object, Boolean> members = stringRedisTemplate.opsForSet().isMember(large, sample.toArray());
+            common = sample.stream()
+                    .filter(member -> BooleanUtil.isTrue(members.get(member)))
+                    .collect(Collectors.toSet());
+        }
+        if (common == null || common.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        //批量查询用户
+        List<Long> ids = common.stream().map(Long::valueOf).collect(Collectors.toList());
+        Map<Long, UserDTO> users = cacheClient.queryManyWithPassThrough(
+                CACHE_USER_KEY, ids, UserDTO.class, this::queryUserDTOs, CACHE_USER_TTL, TimeUnit.MINUTES);
+        return Result.ok(users.values());
+    }
+
+    @Override
+    public Result queryFollowCount(Long id) {
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(FOLLOW_COUNT_KEY + id, Arrays.asList("follows", "followers"));
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("follows", values.get(0) == null ? 0L : Long.parseLong(values.get(0).toString()));
+        counts.put("followers", values.get(1) == null ? 0L : Long.parseLong(values.get(1).toString()));
+        return Result.ok(counts);
+    }
+
+    //查询关注了该用户的所有粉丝id，用于推送博客
+    @Override
+    public List<Long> queryFollowerIds(Long userId) {
+        return toIds(stringRedisTemplate.opsForSet().members(FOLLOWERS_KEY + userId));
+    }
+
+    //查询该用户关注的所有用户id
+    @Override
+    public List<Long> queryFollowIds(Long userId) {
+        return toIds(stringRedisTemplate.opsForSet().members(FOLLOWS_KEY + userId));
+    }
+
+    @Override
+    public long countFollowers(Long userId) {
+        Object value = stringRedisTemplate.opsForHash().get(FOLLOW_COUNT_KEY + userId, "followers");
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    private boolean isFollowing(Long userId, Long followUserId) {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(FOLLOWS_KEY + userId, followUserId.toString()));
+    }
+
+    //关注关系脚本的key：关注集合、粉丝集合、两人的计数
+    private static List<String> followKeys(Long userId, Long followUserId) {
+        return Arrays.asList(
+                FOLLOWS_KEY + userId, FOLLOWERS_KEY + followUserId,
+                FOLLOW_COUNT_KEY + userId, FOLLOW_COUNT_KEY + followUserId);
+    }
+
+    private static List<Long> toIds(Set<String> members) {
+        if (members == null || members.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return members.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
 
+    private Map<Long, UserDTO> queryUserDTOs(Collection<Long> ids) {
+        return userService.listByIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class)));
+    }
 }
@@ -1,21 +1,45 @@
 package com.hmdp.service.impl;
 
 
+import cn.hutool.core.bean.BeanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.TransactionUtils;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -35,8 +59,63 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private RedisBloomFilter shopBloomFilter;
+
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    //附近商铺的最大搜索半径
+    @Value("${hmdp.shop.geo.radius-meters:5000}")
+    private double radiusMeters;
+
 //    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
 
+    @PostConstruct
+    public void init() {
+        //热点店铺开启本地缓存
+        cacheClient.enableLocalCache(CACHE_SHOP_KEY, CACHE_SHOP_LOCAL_SIZE, CACHE_SHOP_LOCAL_TTL, TimeUnit.SECONDS);
+        //加载全部店铺id到布隆过滤器
+        List<Long> ids = listObjs(new QueryWrapper<Shop>().select("id"), id -> Long.valueOf(id.toString()));
+        shopBloomFilter.init(ids);
+        cacheClient.enableBloomFilter(CACHE_SHOP_KEY, shopBloomFilter);
+        //按类型加载店铺坐标
+        loadShopGeo();
+    }
+
+    //按类型分组后每个类型一次GEOADD，重复加载会覆盖为数据库中的坐标
+    private void loadShopGeo() {
+        List<Shop> shops = query().select("id", "type_id", "x", "y").list();
+        Map<Long, List<RedisGeoCommands.GeoLocation<String>>> locations = new HashMap<>();
+        for (Shop shop : shops) {
+            if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+                continue;
+            }
+            locations.computeIfAbsent(shop.getTypeId(), typeId -> new ArrayList<>())
+                    .add(new RedisGeoCommands.GeoLocation<>(shop.getId().toString(), new Point(shop.getX(), shop.getY())));
+            if (shopGeoIndex.isEnabled()) {
+                shopGeoIndex.put(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY());
+            }
+        }
+        locations.forEach((typeId, value) -> stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + typeId, value));
+    }
+
+    @Override
+    public Result saveShop(Shop shop) {
+        // 1.写入数据库
+        save(shop);
+        // 2.写入布隆过滤器
+        shopBloomFilter.put(shop.getId());
+        // 3.写入坐标
+        if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+            stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + shop.getTypeId(), new Point(shop.getX(), shop.getY()), shop.getId().toString());
+            if (shopGeoIndex.isEnabled()) {
+                shopGeoIndex.update(shop.getId(), shop.getTypeId(), shop.getX(), shop.getY());
+            }
+        }
+        return Result.ok(shop.getId());
+    }
+
     @Override
     public Result QueryById(Long id) {
         //解决缓存穿透的方案
@@ -46,7 +125,10 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 //        Shop shop = queryWithMutex(id);
 
         //使用逻辑过期解决缓存击穿的方案
-        Shop shop = cacheClient.queryWithLogicExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+//        Shop shop = cacheClient.queryWithLogicExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+
+        //逻辑过期+概率提前刷新，避免大量店铺同时过期
+        Shop shop = cacheClient.queryWithEarlyRefresh(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
         if (shop == null) {
             return Result.fail("店铺不存在！");
@@ -61,13 +143,114 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if (id == null) {
             return Result.fail("店铺id不能为空");
         }
+        Shop old = getById(id);
+        if (old == null) {
+            return Result.fail("店铺不存在！");
+        }
         // 1.更新数据库
         updateById(shop);
-        // 2.删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        // 2.删除缓存，并通知各节点失效本地缓存
+        cacheClient.delete(CACHE_SHOP_KEY + id);
+        // 3.类型或坐标变化时更新坐标，未传的字段沿用原值
+        Long typeId = shop.getTypeId() != null ? shop.getTypeId() : old.getTypeId();
+        Double x = shop.getX() != null ? shop.getX() : old.getX();
+        Double y = shop.getY() != null ? shop.getY() : old.getY();
+        //事务提交后再写入，回滚时坐标不变
+        TransactionUtils.afterCommit(() -> {
+            if (!Objects.equals(typeId, old.getTypeId())) {
+                stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + old.getTypeId(), id.toString());
+            }
+            if (typeId != null && x != null && y != null) {
+                stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + typeId, new Point(x, y), id.toString());
+                if (shopGeoIndex.isEnabled()) {
+                    shopGeoIndex.update(id, typeId, x, y);
+                }
+            }
+        });
         return Result.ok();
     }
 
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y, Double lastDistance, Long lastId) {
+        // 1.不需要按距离排序时，按类型分页查询数据库
+        if (x == null || y == null) {
+            Page<Shop> page = query()
+                    .eq("type_id", typeId)
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+            return Result.ok(page.getRecords());
+        }
+        // 2.按(距离, 店铺id)升序查询游标之后的一页，第一页不传游标
+        double afterDistance = lastDistance == null ? -1 : lastDistance;
+        long afterId = lastId == null ? 0 : lastId;
+        List<ShopGeoIndex.Neighbor> neighbors;
+        if (!shopGeoIndex.isEnabled()) {
+            neighbors = searchGeoAfter(typeId, x, y, afterDistance, afterId);
+        } else if (lastDistance == null) {
+            //本地网格索引，不访问redis；第一页即最近的k家，从小半径开始扩大，不扫描整个半径
+            neighbors = shopGeoIndex.nearest(typeId.longValue(), x, y, SystemConstants.DEFAULT_PAGE_SIZE, radiusMeters);
+        } else {
+            neighbors = shopGeoIndex.search(typeId.longValue(), x, y, radiusMeters, afterDistance, afterId, SystemConstants.DEFAULT_PAGE_SIZE);
+        }
+        if (neighbors.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 3.批量查询店铺，按距离排序并填充距离，最后一家店铺的距离和id即为下一页的游标
+        List<Long> ids = neighbors.stream().map(ShopGeoIndex.Neighbor::getShopId).collect(Collectors.toList());
+        //店铺缓存与按id查询共用，同为逻辑过期格式
+        Map<Long, Shop> shops = cacheClient.queryManyWithLogicExpire(
+                CACHE_SHOP_KEY, ids, Shop.class, this::queryShops, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        List<Shop> records = new ArrayList<>(ids.size());
+        for (ShopGeoIndex.Neighbor neighbor : neighbors) {
+            Shop cached = shops.get(neighbor.getShopId());
+            if (cached != null) {
+                //缓存中的对象在多个请求间共享，复制后再填充距离
+                Shop shop = BeanUtil.copyProperties(cached, Shop.class);
+                shop.setDistance(neighbor.getDistance());
+                records.add(shop);
+            }
+        }
+        return Result.ok(records);
+    }
+
+    private Map<Long, Shop> queryShops(Collection<Long> ids) {
+        return listByIds(ids).stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
+    }
+
+    /**
+     * GEOSEARCH只能从最近处开始取前N个，不支持从游标处开始
+     * 从两页开始取，过滤出游标之后的店铺，不足一页且结果被截断时加倍重取；
+     * 截断时与最远一家距离相同的店铺可能没有全部返回，这些店铺留到下一轮
+     */
+    private List<ShopGeoIndex.Neighbor> searchGeoAfter(Integer typeId, double x, double y, double afterDistance, long afterId) {
+        int count = SystemConstants.DEFAULT_PAGE_SIZE * 2;
+        while (true) {
+            GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().search(
+                    SHOP_GEO_KEY + typeId,
+                    GeoReference.fromCoordinate(x, y),
+                    new Distance(radiusMeters, RedisGeoCommands.DistanceUnit.METERS),
+                    RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().sortAscending().limit(count)
+            );
+            List<GeoResult<RedisGeoCommands.GeoLocation<String>>> list =
+                    results == null ? Collections.emptyList() : results.getContent();
+            boolean truncated = list.size() >= count;
+            double boundary = truncated ? list.get(list.size() - 1).getDistance().getValue() : Double.POSITIVE_INFINITY;
+            List<ShopGeoIndex.Neighbor> page = new ArrayList<>();
+            for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : list) {
+                ShopGeoIndex.Neighbor neighbor = new ShopGeoIndex.Neighbor(
+                        Long.parseLong(result.getContent().getName()), result.getDistance().getValue());
+                if (neighbor.getDistance() < boundary && neighbor.isAfter(afterDistance, afterId)) {
+                    page.add(neighbor);
+                }
+            }
+            if (page.size() >= SystemConstants.DEFAULT_PAGE_SIZE || !truncated) {
+                page.sort(ShopGeoIndex.Neighbor.ORDER);
+                return page.size() > SystemConstants.DEFAULT_PAGE_SIZE
+                        ? new ArrayList<>(page.subList(0, SystemConstants.DEFAULT_PAGE_SIZE)) : page;
+            }
+            count *= 2;
+        }
+    }
+
     //    //使用redis存储null值 解决缓存穿透
 //    public Shop queryWithPassThrough(Long id) {
 //        String key = CACHE_SHOP_KEY + id;
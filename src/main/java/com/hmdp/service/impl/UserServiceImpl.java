@@ -4,7 +4,9 @@ import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
@@ -12,16 +14,22 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.LoginSessionCache;
+import com.hmdp.utils.RedisBloomFilter;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SignedTokenManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -42,6 +50,26 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private RedisBloomFilter userBloomFilter;
+
+    @Resource
+    private LoginSessionCache loginSessionCache;
+
+    @Resource
+    private SignedTokenManager signedTokenManager;
+
+    @PostConstruct
+    public void init() {
+        //加载全部用户id到布隆过滤器
+        List<Long> ids = listObjs(new QueryWrapper<User>().select("id"), id -> Long.valueOf(id.toString()));
+        userBloomFilter.init(ids);
+        cacheClient.enableBloomFilter(CACHE_USER_KEY, userBloomFilter);
+    }
+
     public Result sendCode(String phone, HttpSession session) {
         //1.校验手机号
         if(RegexUtils.isPhoneInvalid(phone)){
@@ -84,10 +112,14 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         }
         /*//保存用户信息到session
         session.setAttribute("user", BeanUtil.copyProperties(user, UserDTO.class));*/
+        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
+        //签名模式下用户信息直接写入token，不保存到redis
+        if (signedTokenManager.isEnabled()) {
+            return Result.ok(signedTokenManager.issue(userDTO));
+        }
         //生成token
         String token = UUID.randomUUID().toString(true);
         //userDTO转map
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
         Map<String, Object> map = BeanUtil.beanToMap(userDTO, new HashMap<>()
                 , CopyOptions.create().setIgnoreNullValue(true)
                         .setFieldValueEditor(
@@ -100,11 +132,27 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(token);
     }
 
+    @Override
+    public Result logout(String token) {
+        if (StrUtil.isBlank(token)) {
+            return Result.ok();
+        }
+        if (signedTokenManager.isEnabled()) {
+            //签名模式下记录注销的token，直到其自然过期
+            signedTokenManager.revoke(token);
+            return Result.ok();
+        }
+        //删除redis中的登录信息，并通知所有节点清除本地缓存
+        loginSessionCache.invalidate(token);
+        return Result.ok();
+    }
+
     private User createUserWithPhone(String phone) {
         User user = new User();
         user.setPhone(phone);
         user.setNickName(RandomUtil.randomString(10));
         save(user);
+        userBloomFilter.put(user.getId());
         return user;
     }
 }
@@ -1,34 +1,60 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.exceptions.ExceptionUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.HierarchicalLock;
+import com.hmdp.utils.ILock;
+import com.hmdp.utils.OrderDeliveryCounter;
+import com.hmdp.utils.OrderStreamPartitioner;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.RedisLockSubscriber;
+import com.hmdp.utils.SeckillSoldOutCache;
+import com.hmdp.utils.SeckillStockManager;
+import com.hmdp.utils.SimpleRedisLock;
+import com.hmdp.utils.TransactionUtils;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisZSetCommands;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DLQ;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
 
 /**
  * <p>
@@ -42,14 +68,6 @@ import java.util.concurrent.Executors;
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
-
-    static {
-        SECKILL_SCRIPT = new DefaultRedisScript<>();
-        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-        SECKILL_SCRIPT.setResultType(Long.class);
-    }
-
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
@@ -60,76 +78,290 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
-    private RedissonClient redissonClient;
+    private RedisLockSubscriber redisLockSubscriber;
+
+    @Resource
+    private SeckillStockManager seckillStockManager;
+
+    @Resource
+    private SeckillSoldOutCache seckillSoldOutCache;
+
+    @Resource
+    private OrderStreamPartitioner orderStreamPartitioner;
 
     //阻塞队列
 //    private BlockingQueue<VoucherOrder> orderTasks = new ArrayBlockingQueue<>(1024 * 1024);
 
-    //线程池
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final String GROUP = "g1";
+    //死信消息中记录来源和失败原因的字段
+    private static final String DLQ_STREAM = "stream";
+    private static final String DLQ_SOURCE_ID = "sourceId";
+    private static final String DLQ_DELIVERIES = "deliveries";
+    private static final String DLQ_REASON = "reason";
+
+    //消费者线程池
+    private ExecutorService seckillOrderExecutor;
+
+    //每次从消息队列读取的订单数，大于1时批量落库
+    @Value("${hmdp.order.consumer.batch-size:1}")
+    private int batchSize;
+
+    //每个节点的消费者数量
+    @Value("${hmdp.order.consumer.threads:1}")
+    private int consumerThreads;
+
+    //消息最多投递次数，超过后转入死信队列
+    @Value("${hmdp.order.dlq.max-retry:3}")
+    private int maxRetry;
+
+    //订单分区由租约保证同一时间只有一个消费者处理，同一用户对同一优惠券的订单不会跨节点并发
+    //只有绕过分区直接处理订单时才需要开启分布式锁
+    @Value("${hmdp.order.lock.distributed:false}")
+    private boolean distributedOrderLock;
+
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    private final List<String> consumerNames = new ArrayList<>();
+
+    @PostConstruct
+    private void init() {
+        for (String stream : orderStreamPartitioner.streams()) {
+            createGroupIfAbsent(stream, GROUP);
+        }
+        //分区后原队列中遗留的订单仍需消费
+        createGroupIfAbsent(SECKILL_ORDER_STREAM, GROUP);
+        seckillOrderExecutor = Executors.newFixedThreadPool(consumerThreads, new NamedThreadFactory("order-consumer-", false));
+        //消费者名称由主机名、端口和序号组成，各节点不重复
+        String host = NetUtil.getLocalHostName();
+        for (int i = 0; i < consumerThreads; i++) {
+            String consumerName = host + ":" + serverPort + "-" + i;
+            consumerNames.add(consumerName);
+            seckillOrderExecutor.submit(new VoucherOrderHandler(consumerName));
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        seckillOrderExecutor.shutdownNow();
+        //释放分区租约，其他节点立即接管
+        for (String consumerName : consumerNames) {
+            orderStreamPartitioner.release(consumerName);
+        }
+    }
+
+    private void createGroupIfAbsent(String queueName, String group) {
+        byte[] rawKey = queueName.getBytes(StandardCharsets.UTF_8);
+        try {
+            //队列不存在时一并创建
+            stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(rawKey, group, ReadOffset.from("0"), true));
+        } catch (RedisSystemException e) {
+            if (!StrUtil.contains(ExceptionUtil.getRootCauseMessage(e), "BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
 
     private class VoucherOrderHandler implements Runnable{
-        String QueueName = "stream.orders";
+        private final String consumerName;
+        private final OrderDeliveryCounter deliveryCounter = new OrderDeliveryCounter(maxRetry);
+        //当前持有租约的分区
+        private List<String> streams = Collections.emptyList();
+        private long nextRenewTime;
+        private long nextClaimTime;
+
+        private VoucherOrderHandler(String consumerName) {
+            this.consumerName = consumerName;
+        }
+
         @Override
         public void run() {
-            while (true){
+            while (!Thread.currentThread().isInterrupted()){
                 try {
-                    //获取消息队列的订单消息
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create(QueueName, ReadOffset.latest())
-                    );
-                    //判断是否获取成功
-                if (list == null|| list.isEmpty()){
-                    //若获取失败，重新循环
-                    continue;
-                }
-                //若获取成功，则处理订单
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    handleVoucherOrder(voucherOrder);
-                //ACK确认
-                    stringRedisTemplate.opsForStream().acknowledge(QueueName,"g1",record.getId());
+                    long now = System.currentTimeMillis();
+                    //定期续约，节点增减时重新分配分区
+                    if (now >= nextRenewTime) {
+                        streams = orderStreamPartitioner.assign(consumerName);
+                        nextRenewTime = now + orderStreamPartitioner.getRenewIntervalMillis();
+                    }
+                    if (streams.isEmpty()) {
+                        Thread.sleep(orderStreamPartitioner.getRenewIntervalMillis());
+                        continue;
+                    }
+                    //定期认领下线消费者遗留的消息
+                    if (now >= nextClaimTime) {
+                        for (String stream : streams) {
+                            if (orderStreamPartitioner.claimIdle(stream, GROUP, consumerName, batchSize * 10) > 0) {
+                                handlePendingList(stream);
+                            }
+                        }
+                        //分区数调整前写入原队列的订单，由持有分区0的消费者定期消费完
+                        String legacyStream = orderStreamPartitioner.legacyStreamOf(streams);
+                        if (legacyStream != null) {
+                            orderStreamPartitioner.claimIdle(legacyStream, GROUP, consumerName, batchSize * 10);
+                            handlePendingList(legacyStream);
+                            drain(legacyStream);
+                        }
+                        nextClaimTime = now + orderStreamPartitioner.getClaimIdleMillis();
+                    }
+                    //各分区可能位于不同的slot，逐个读取
+                    long blockMillis = Math.max(100, 2000 / streams.size());
+                    for (String stream : streams) {
+                        //心跳续约失败后不再读取该分区，等待下次重新分配
+                        if (!orderStreamPartitioner.owns(consumerName, stream)) {
+                            continue;
+                        }
+                        //获取消息队列的订单消息
+                        List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                                Consumer.from(GROUP, consumerName),
+                                StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(blockMillis)),
+                                StreamOffset.create(stream, ReadOffset.lastConsumed())
+                        );
+                        //判断是否获取成功
+                        if (list == null|| list.isEmpty()){
+                            continue;
+                        }
+                        //若获取成功，则处理订单并ACK确认
+                        handleRecords(stream, list);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 } catch (Exception e) {
                     log.info("处理订单异常：",e);
-                    handlePendingList();
+                    for (String stream : streams) {
+                        handlePendingList(stream);
+                    }
+                }
+            }
+        }
+
+        //不阻塞地读取队列中的新消息，直到读完为止
+        private void drain(String stream) {
+            while (!Thread.currentThread().isInterrupted() && orderStreamPartitioner.owns(consumerName, stream)) {
+                List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                        Consumer.from(GROUP, consumerName),
+                        StreamReadOptions.empty().count(batchSize),
+                        StreamOffset.create(stream, ReadOffset.lastConsumed())
+                );
+                if (list == null || list.isEmpty()) {
+                    return;
+                }
+                try {
+                    handleRecords(stream, list);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.info("处理订单异常：", e);
+                    handlePendingList(stream);
                 }
             }
         }
 
-        private void handlePendingList() {
-            while (true){
+        private void handlePendingList(String stream) {
+            while (!Thread.currentThread().isInterrupted()){
+                if (!orderStreamPartitioner.owns(consumerName, stream)) {
+                    break;
+                }
+                List<MapRecord<String, Object, Object>> list;
                 try {
-                    //获取消息队列的订单消息
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1),
-                            StreamOffset.create(QueueName, ReadOffset.from("0"))
+                    //获取pending list中的订单消息
+                    list = stringRedisTemplate.opsForStream().read(
+                            Consumer.from(GROUP, consumerName),
+                            StreamReadOptions.empty().count(batchSize),
+                            StreamOffset.create(stream, ReadOffset.from("0"))
                     );
-                    //判断是否获取成功
-                    if (list == null|| list.isEmpty()){
-                        //若获取失败，重新循环
-                        break;
-                    }
-                    //若获取成功，则处理订单
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    handleVoucherOrder(voucherOrder);
-                    //ACK确认
-                    stringRedisTemplate.opsForStream().acknowledge(QueueName,"g1",record.getId());
                 } catch (Exception e) {
                     log.info("pending List 异常：",e);
-                    try {
-                        Thread.sleep(80);
-                    } catch (InterruptedException ex) {
-                        ex.printStackTrace();
+                    sleep(80);
+                    continue;
+                }
+                //判断是否获取成功
+                if (list == null|| list.isEmpty()){
+                    //若获取失败，结束循环
+                    break;
+                }
+                try {
+                    //若获取成功，则处理订单并ACK确认
+                    handleRecords(stream, list);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.info("pending List 异常：",e);
+                    //整批失败时逐条处理，只有出错的消息计入重试次数
+                    for (MapRecord<String, Object, Object> record : list) {
+                        try {
+                            handleRecords(stream, Collections.singletonList(record));
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        } catch (Exception ex) {
+                            retryOrDeadLetter(stream, record, ex);
+                        }
                     }
                 }
             }
         }
+
+        //投递次数未超过上限时稍后重试，否则转入死信队列，避免一条消息阻塞整个分区
+        private void retryOrDeadLetter(String stream, MapRecord<String, Object, Object> record, Exception e) {
+            String id = record.getId().getValue();
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(
+                    stream, Consumer.from(GROUP, consumerName), Range.closed(id, id), 1L);
+            long deliveries = deliveryCounter.deliveries(id, pending.isEmpty() ? 0 : pending.get(0).getTotalDeliveryCount());
+            //获取订单锁超时的投递不计入次数
+            if (deliveries < maxRetry) {
+                sleep(80);
+                return;
+            }
+            Map<String, String> values = new LinkedHashMap<>();
+            record.getValue().forEach((key, value) -> values.put(key.toString(), value.toString()));
+            values.put(DLQ_STREAM, stream);
+            values.put(DLQ_SOURCE_ID, id);
+            values.put(DLQ_DELIVERIES, String.valueOf(deliveries));
+            values.put(DLQ_REASON, StrUtil.maxLength(ExceptionUtil.getRootCauseMessage(e), 500));
+            stringRedisTemplate.opsForStream().add(StreamRecords.mapBacked(values).withStreamKey(SECKILL_ORDER_DLQ));
+            stringRedisTemplate.opsForStream().acknowledge(stream, GROUP, record.getId());
+            deliveryCounter.done(id);
+            log.error("订单消息{}投递{}次仍处理失败，已转入死信队列", id, deliveries);
+        }
+
+        private void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void handleRecords(String stream, List<MapRecord<String, Object, Object>> records) throws InterruptedException {
+            //租约已过期时分区可能已被其他消费者接管，不处理也不ACK，消息留在pending list中由新的持有者认领
+            if (!orderStreamPartitioner.owns(consumerName, stream)) {
+                log.warn("消费者{}已失去分区{}的租约，放弃{}条消息", consumerName, stream, records.size());
+                return;
+            }
+            List<VoucherOrder> voucherOrders = new ArrayList<>(records.size());
+            for (MapRecord<String, Object, Object> record : records) {
+                voucherOrders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+            }
+            if (voucherOrders.size() == 1) {
+                try {
+                    handleVoucherOrder(voucherOrders.get(0));
+                } catch (OrderLockTimeoutException e) {
+                    deliveryCounter.lockTimeout(records.get(0).getId().getValue());
+                    throw e;
+                }
+            } else {
+                //批量落库，一人一单和重复消息在事务内过滤，不再逐个加锁
+                proxy.createVoucherOrders(voucherOrders);
+            }
+            //一次ACK整批消息
+            RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+            stringRedisTemplate.opsForStream().acknowledge(stream, GROUP, ids);
+            for (RecordId id : ids) {
+                deliveryCounter.done(id.getValue());
+            }
+        }
 //    private class VoucherOrderHandler implements Runnable{
 //        @Override
 //        public void run() {
@@ -143,15 +375,17 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 //            }
 //        }
 
-        private void handleVoucherOrder(VoucherOrder voucherOrder) {
+        private void handleVoucherOrder(VoucherOrder voucherOrder) throws InterruptedException {
             Long userId = voucherOrder.getUserId();
-            //创建锁对象
-            RLock lock = redissonClient.getLock("lock:order:" + userId);
-            //获取锁
-            boolean isLock = lock.tryLock();
+            //创建锁对象：先在本地按用户分段加锁，只有可能跨节点竞争时才加分布式锁
+            String lockName = "order:" + userId;
+            ILock lock = distributedOrderLock
+                    ? new HierarchicalLock(lockName, new SimpleRedisLock(lockName, stringRedisTemplate, redisLockSubscriber))
+                    : new HierarchicalLock(lockName);
+            //获取锁，超时则抛出异常，消息留在pending list中稍后重试
+            boolean isLock = lock.tryLock(1, -1, TimeUnit.SECONDS);
             if (!isLock){
-                log.error("不允许重复下单");
-                return;
+                throw new OrderLockTimeoutException("获取订单锁超时，用户：" + userId);
             }
             try {
                 //由于基于多线程，无法实现
@@ -159,11 +393,21 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 //                IVoucherOrderService proxy = (IVoucherOrderService) AopContext.currentProxy();
                 proxy.createVoucherOrder(voucherOrder);
             }finally {
-                lock.unlock();
+                lock.unLock();
             }
         }
     }
 
+    //获取订单锁超时，消息留在pending list中稍后重试，不计入投递次数
+    private static class OrderLockTimeoutException extends IllegalStateException {
+        private OrderLockTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    //通过代理对象调用，使得事务生效
+    @Lazy
+    @Resource
     private IVoucherOrderService proxy;
 
     //使用lua脚本实现
@@ -199,21 +443,23 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     @Override
     public Result seckillVoucher(Long voucherId) {
+        //已售罄则直接返回，不访问redis
+        if (seckillSoldOutCache.isSoldOut(voucherId)) {
+            return Result.fail("库存不足！");
+        }
         long orderId = redisIdWorker.nextId("order");
         Long userId = UserHolder.getUser().getId();
-        //执行lua脚本
-        Long execute = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(), userId.toString(),String.valueOf(orderId)
-        );
+        //扣减前的库存版本，期间补充了库存时售罄标记不生效
+        long epoch = seckillSoldOutCache.epoch(voucherId);
+        //扣减库存并发送订单消息
+        int result = seckillStockManager.seckill(voucherId, userId, orderId);
         //判断结果是否为0
-        int result = execute.intValue();
-        if (execute != 0) {
-            return Result.fail(result == 1 ? "库存不足！" : "无法重复下单");
+        if (result == SeckillStockManager.SOLD_OUT) {
+            seckillSoldOutCache.markSoldOut(voucherId, epoch);
+        }
+        if (result != SeckillStockManager.SUCCESS) {
+            return Result.fail(result == SeckillStockManager.SOLD_OUT ? "库存不足！" : "无法重复下单");
         }
-        //获取代理对象
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
         return Result.ok(orderId);
     }
 
@@ -225,7 +471,9 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         Long count = query().eq("user_id", userId).eq("voucher_id", voucherOrder.getVoucherId()).count();
         // 是否存在
         if (count > 0) {
+            //消息重复投递时订单已存在，直接跳过
             log.error("用户已有购买记录！");
+            return;
         }
         // 5.扣减库存
         boolean success = seckillVoucherService.update()
@@ -233,7 +481,9 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 .eq("voucher_id", voucherOrder.getVoucherId()).gt("stock", 0)
                 .update();
         if (!success) {
-            log.error("库存不足！");
+            //redis已扣减库存但数据库库存不足，转入死信队列，补充库存后重放或丢弃
+            deadLetter(Collections.singletonList(voucherOrder), "数据库库存不足");
+            return;
         }
         // 6.创建订单
 //        VoucherOrder voucherOrder = new VoucherOrder();
@@ -243,4 +493,129 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 //        voucherOrder.setUserId(userId);
         save(voucherOrder);
     }
+
+    @Override
+    @Transactional
+    public void createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        // 1.批内按用户和优惠券去重
+        Map<String, VoucherOrder> orderMap = new LinkedHashMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            orderMap.putIfAbsent(voucherOrder.getUserId() + ":" + voucherOrder.getVoucherId(), voucherOrder);
+        }
+        // 2.排除已落库的订单，消息重放时不会重复下单
+        Set<Long> userIds = voucherOrders.stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+        Set<Long> voucherIds = voucherOrders.stream().map(VoucherOrder::getVoucherId).collect(Collectors.toSet());
+        List<VoucherOrder> existOrders = query().select("user_id", "voucher_id")
+                .in("user_id", userIds).in("voucher_id", voucherIds).list();
+        for (VoucherOrder existOrder : existOrders) {
+            orderMap.remove(existOrder.getUserId() + ":" + existOrder.getVoucherId());
+        }
+        if (orderMap.isEmpty()) {
+            return;
+        }
+        // 3.每个优惠券执行一次库存扣减
+        Map<Long, List<VoucherOrder>> voucherOrderMap = orderMap.values().stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+        List<VoucherOrder> newOrders = new ArrayList<>(orderMap.size());
+        voucherOrderMap.forEach((voucherId, orders) -> {
+            int count = deductStock(voucherId, orders.size());
+            if (count < orders.size()) {
+                //库存不足的订单转入死信队列，不能直接丢弃
+                deadLetter(orders.subList(count, orders.size()), "数据库库存不足");
+            }
+            newOrders.addAll(orders.subList(0, count));
+        });
+        // 4.一条insert写入全部订单
+        if (!newOrders.isEmpty()) {
+            getBaseMapper().insertBatch(newOrders);
+        }
+    }
+
+    /**
+     * 事务提交后把未能创建的订单写入死信队列，事务回滚时整批消息会重新处理，不写入
+     * 写入时不归还redis库存：管理员补充库存后重放，或丢弃，丢弃时才归还redis库存并释放用户的下单资格
+     */
+    private void deadLetter(List<VoucherOrder> orders, String reason) {
+        List<VoucherOrder> failed = new ArrayList<>(orders);
+        TransactionUtils.afterCommit(() -> {
+            for (VoucherOrder order : failed) {
+                Map<String, String> values = new LinkedHashMap<>();
+                values.put("userId", order.getUserId().toString());
+                values.put("voucherId", order.getVoucherId().toString());
+                values.put("id", order.getId().toString());
+                values.put(DLQ_STREAM, orderStreamPartitioner.streamOf(order.getVoucherId()));
+                values.put(DLQ_REASON, reason);
+                stringRedisTemplate.opsForStream().add(StreamRecords.mapBacked(values).withStreamKey(SECKILL_ORDER_DLQ));
+            }
+            log.error("{}个订单{}，已转入死信队列", failed.size(), reason);
+        });
+    }
+
+    //扣减库存，库存不足时只扣减剩余部分，返回实际扣减的数量
+    private int deductStock(Long voucherId, int count) {
+        if (updateStock(voucherId, count)) {
+            return count;
+        }
+        SeckillVoucher seckillVoucher = seckillVoucherService.getById(voucherId);
+        int remain = seckillVoucher == null ? 0 : Math.min(seckillVoucher.getStock(), count);
+        return remain > 0 && updateStock(voucherId, remain) ? remain : 0;
+    }
+
+    private boolean updateStock(Long voucherId, int count) {
+        return seckillVoucherService.update()
+                .setSql("stock = stock - " + count)
+                .eq("voucher_id", voucherId).ge("stock", count)
+                .update();
+    }
+
+    @Override
+    public Result queryDeadLetters(Integer count) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(SECKILL_ORDER_DLQ, Range.unbounded(), RedisZSetCommands.Limit.limit().count(count));
+        List<Map<Object, Object>> deadLetters = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<Object, Object> deadLetter = new LinkedHashMap<>(record.getValue());
+            deadLetter.put("dlqId", record.getId().getValue());
+            deadLetters.add(deadLetter);
+        }
+        return Result.ok(deadLetters);
+    }
+
+    @Override
+    public Result replayDeadLetter(String id) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(SECKILL_ORDER_DLQ, Range.closed(id, id));
+        if (records == null || records.isEmpty()) {
+            return Result.fail("消息不存在");
+        }
+        Map<Object, Object> values = new LinkedHashMap<>(records.get(0).getValue());
+        values.remove(DLQ_STREAM);
+        values.remove(DLQ_SOURCE_ID);
+        values.remove(DLQ_DELIVERIES);
+        values.remove(DLQ_REASON);
+        //按当前的分区配置重新投递
+        Long voucherId = Long.valueOf(values.get("voucherId").toString());
+        stringRedisTemplate.opsForStream().add(
+                StreamRecords.mapBacked(values).withStreamKey(orderStreamPartitioner.streamOf(voucherId)));
+        stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_DLQ, id);
+        return Result.ok();
+    }
+
+    @Override
+    public Result discardDeadLetter(String id) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(SECKILL_ORDER_DLQ, Range.closed(id, id));
+        Long deleted = stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_DLQ, id);
+        if (deleted == null || deleted == 0 || records == null || records.isEmpty()) {
+            return Result.fail("消息不存在");
+        }
+        //订单不会再创建，在同一个脚本中归还redis库存并释放用户的下单资格
+        Map<Object, Object> values = records.get(0).getValue();
+        Long voucherId = Long.valueOf(values.get("voucherId").toString());
+        if (seckillStockManager.cancelOrder(voucherId, Long.valueOf(values.get("userId").toString()))) {
+            //库存已归还，清除各节点的售罄标记
+            seckillSoldOutCache.reset(voucherId);
+        }
+        return Result.ok();
+    }
 }
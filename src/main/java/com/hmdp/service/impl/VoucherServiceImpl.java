@@ -7,8 +7,9 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
-import com.hmdp.utils.RedisConstants;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.SeckillSoldOutCache;
+import com.hmdp.utils.SeckillStockManager;
+import com.hmdp.utils.TransactionUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -27,7 +28,9 @@ import java.util.List;
 public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> implements IVoucherService {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private SeckillStockManager seckillStockManager;
+    @Resource
+    private SeckillSoldOutCache seckillSoldOutCache;
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
@@ -51,7 +54,29 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
-        //保存库存至redis中
-        stringRedisTemplate.opsForValue().set(RedisConstants.SECKILL_STOCK_KEY +voucher.getId(),voucher.getStock().toString());
+        //事务提交后保存库存至redis中，开启分片时拆分到各个分片
+        TransactionUtils.afterCommit(() -> seckillStockManager.initStock(voucher.getId(), voucher.getStock()));
+    }
+
+    @Override
+    @Transactional
+    public Result addSeckillStock(Long voucherId, Integer count) {
+        if (count == null || count <= 0) {
+            return Result.fail("补充数量必须大于0");
+        }
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock + " + count)
+                .eq("voucher_id", voucherId)
+                .update();
+        if (!success) {
+            return Result.fail("秒杀券不存在");
+        }
+        //事务提交后先补充redis库存，再清除各节点的售罄标记；回滚时redis库存不变，不会超卖
+        //库存版本在补充库存之后递增，补充前获取版本的请求发布的售罄标记都会被忽略
+        TransactionUtils.afterCommit(() -> {
+            seckillStockManager.addStock(voucherId, count);
+            seckillSoldOutCache.reset(voucherId);
+        });
+        return Result.ok();
     }
 }
@@ -0,0 +1,322 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 紧凑的二进制序列化
+ * 已注册编解码器的类型按字段顺序写入，其余类型退回JSON
+ * 逻辑过期的值以8字节的过期时间戳作为头部，判断过期时无需解析数据
+ */
+public class BinaryCacheSerializer implements CacheSerializer {
+    //二进制数据的首字节标记，JSON文本不会以该字节开头
+    private static final byte BINARY_MARK = 1;
+    private static final int EXPIRE_HEADER_LENGTH = 8;
+
+    private final CacheSerializer fallback = new JsonCacheSerializer();
+    private final Map<Class<?>, BinaryCodec<?>> codecs = new HashMap<>();
+
+    public BinaryCacheSerializer() {
+        register(Shop.class, new ShopCodec());
+        register(ShopType.class, new ShopTypeCodec());
+        register(UserDTO.class, new UserDTOCodec());
+    }
+
+    public <T> void register(Class<T> type, BinaryCodec<T> codec) {
+        codecs.put(type, codec);
+    }
+
+    @Override
+    public byte[] serialize(Object value) {
+        BinaryOutput out = new BinaryOutput();
+        if (!writeBody(out, value)) {
+            return fallback.serialize(value);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> type) {
+        return readBody(bytes, 0, type);
+    }
+
+    @Override
+    public byte[] serializeWithExpire(Object value, LocalDateTime expireTime) {
+        BinaryOutput out = new BinaryOutput();
+        out.writeLong(expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        if (!writeBody(out, value)) {
+            out.writeBytes(fallback.serialize(value));
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public LocalDateTime readExpireTime(byte[] bytes) {
+        if (isLegacyJson(bytes)) {
+            return fallback.readExpireTime(bytes);
+        }
+        long millis = ByteBuffer.wrap(bytes, 0, EXPIRE_HEADER_LENGTH).getLong();
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    @Override
+    public RedisData deserializeWithExpire(byte[] bytes, Class<?> type) {
+        if (isLegacyJson(bytes)) {
+            return fallback.deserializeWithExpire(bytes, type);
+        }
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(readExpireTime(bytes));
+        redisData.setData(readBody(bytes, EXPIRE_HEADER_LENGTH, type));
+        return redisData;
+    }
+
+    //兼容切换前以JSON格式写入的逻辑过期数据
+    private boolean isLegacyJson(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == '{';
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean writeBody(BinaryOutput out, Object value) {
+        BinaryCodec<Object> codec = (BinaryCodec<Object>) codecs.get(value.getClass());
+        if (codec == null) {
+            return false;
+        }
+        out.writeByte(BINARY_MARK);
+        codec.write(out, value);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T readBody(byte[] bytes, int offset, Class<T> type) {
+        BinaryCodec<T> codec = (BinaryCodec<T>) codecs.get(type);
+        if (codec == null || bytes[offset] != BINARY_MARK) {
+            byte[] body = offset == 0 ? bytes : Arrays.copyOfRange(bytes, offset, bytes.length);
+            return fallback.deserialize(body, type);
+        }
+        return codec.read(new BinaryInput(bytes, offset + 1));
+    }
+
+    /**
+     * 单个类型的编解码器，读写字段的顺序必须一致
+     */
+    public interface BinaryCodec<T> {
+        void write(BinaryOutput out, T value);
+
+        T read(BinaryInput in);
+    }
+
+    private static class ShopCodec implements BinaryCodec<Shop> {
+        @Override
+        public void write(BinaryOutput out, Shop shop) {
+            out.writeLongObject(shop.getId());
+            out.writeString(shop.getName());
+            out.writeLongObject(shop.getTypeId());
+            out.writeString(shop.getImages());
+            out.writeString(shop.getArea());
+            out.writeString(shop.getAddress());
+            out.writeDoubleObject(shop.getX());
+            out.writeDoubleObject(shop.getY());
+            out.writeLongObject(shop.getAvgPrice());
+            out.writeIntObject(shop.getSold());
+            out.writeIntObject(shop.getComments());
+            out.writeIntObject(shop.getScore());
+            out.writeString(shop.getOpenHours());
+            out.writeDateTime(shop.getCreateTime());
+            out.writeDateTime(shop.getUpdateTime());
+            out.writeDoubleObject(shop.getDistance());
+        }
+
+        @Override
+        public Shop read(BinaryInput in) {
+            Shop shop = new Shop();
+            shop.setId(in.readLongObject());
+            shop.setName(in.readString());
+            shop.setTypeId(in.readLongObject());
+            shop.setImages(in.readString());
+            shop.setArea(in.readString());
+            shop.setAddress(in.readString());
+            shop.setX(in.readDoubleObject());
+            shop.setY(in.readDoubleObject());
+            shop.setAvgPrice(in.readLongObject());
+            shop.setSold(in.readIntObject());
+            shop.setComments(in.readIntObject());
+            shop.setScore(in.readIntObject());
+            shop.setOpenHours(in.readString());
+            shop.setCreateTime(in.readDateTime());
+            shop.setUpdateTime(in.readDateTime());
+            shop.setDistance(in.readDoubleObject());
+            return shop;
+        }
+    }
+
+    private static class ShopTypeCodec implements BinaryCodec<ShopType> {
+        @Override
+        public void write(BinaryOutput out, ShopType shopType) {
+            out.writeLongObject(shopType.getId());
+            out.writeString(shopType.getName());
+            out.writeString(shopType.getIcon());
+            out.writeIntObject(shopType.getSort());
+            out.writeDateTime(shopType.getCreateTime());
+            out.writeDateTime(shopType.getUpdateTime());
+        }
+
+        @Override
+        public ShopType read(BinaryInput in) {
+            ShopType shopType = new ShopType();
+            shopType.setId(in.readLongObject());
+            shopType.setName(in.readString());
+            shopType.setIcon(in.readString());
+            shopType.setSort(in.readIntObject());
+            shopType.setCreateTime(in.readDateTime());
+            shopType.setUpdateTime(in.readDateTime());
+            return shopType;
+        }
+    }
+
+    private static class UserDTOCodec implements BinaryCodec<UserDTO> {
+        @Override
+        public void write(BinaryOutput out, UserDTO user) {
+            out.writeLongObject(user.getId());
+            out.writeString(user.getNickName());
+            out.writeString(user.getIcon());
+        }
+
+        @Override
+        public UserDTO read(BinaryInput in) {
+            UserDTO user = new UserDTO();
+            user.setId(in.readLongObject());
+            user.setNickName(in.readString());
+            user.setIcon(in.readString());
+            return user;
+        }
+    }
+
+    public static class BinaryOutput {
+        private byte[] buf = new byte[128];
+        private int pos;
+
+        public void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        public void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        public void writeInt(int v) {
+            ensure(4);
+            buf[pos++] = (byte) (v >>> 24);
+            buf[pos++] = (byte) (v >>> 16);
+            buf[pos++] = (byte) (v >>> 8);
+            buf[pos++] = (byte) v;
+        }
+
+        public void writeLong(long v) {
+            writeInt((int) (v >>> 32));
+            writeInt((int) v);
+        }
+
+        public void writeIntObject(Integer v) {
+            writeByte(v == null ? 0 : 1);
+            if (v != null) {
+                writeInt(v);
+            }
+        }
+
+        public void writeLongObject(Long v) {
+            writeByte(v == null ? 0 : 1);
+            if (v != null) {
+                writeLong(v);
+            }
+        }
+
+        public void writeDoubleObject(Double v) {
+            writeByte(v == null ? 0 : 1);
+            if (v != null) {
+                writeLong(Double.doubleToRawLongBits(v));
+            }
+        }
+
+        //null写入长度-1
+        public void writeString(String s) {
+            if (s == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            writeBytes(bytes);
+        }
+
+        public void writeDateTime(LocalDateTime time) {
+            writeByte(time == null ? 0 : 1);
+            if (time != null) {
+                writeLong(time.toEpochSecond(ZoneOffset.UTC));
+                writeInt(time.getNano());
+            }
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+            }
+        }
+    }
+
+    public static class BinaryInput {
+        private final ByteBuffer buffer;
+
+        public BinaryInput(byte[] bytes, int offset) {
+            this.buffer = ByteBuffer.wrap(bytes, offset, bytes.length - offset);
+        }
+
+        public Integer readIntObject() {
+            return buffer.get() == 0 ? null : buffer.getInt();
+        }
+
+        public Long readLongObject() {
+            return buffer.get() == 0 ? null : buffer.getLong();
+        }
+
+        public Double readDoubleObject() {
+            return buffer.get() == 0 ? null : buffer.getDouble();
+        }
+
+        public String readString() {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return s;
+        }
+
+        public LocalDateTime readDateTime() {
+            if (buffer.get() == 0) {
+                return null;
+            }
+            long seconds = buffer.getLong();
+            int nano = buffer.getInt();
+            return LocalDateTime.ofEpochSecond(seconds, nano, ZoneOffset.UTC);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+
+/**
+ * 批量查询用户是否点赞过博客，一页博客只需一次往返
+ * 开启本地缓存后，记住每个用户最近查询过的点赞状态，命中时不访问redis；
+ * 本节点的点赞操作会同步更新缓存，其他节点的点赞最多在缓存有效期内不可见
+ */
+@Component
+public class BlogLikeResolver {
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean localCacheEnabled;
+    //每个用户最多缓存的博客数，超过后不再缓存新的博客
+    private final int maxBlogsPerUser;
+    //userId -> (blogId -> 是否点赞)
+    private final Cache<Long, Map<Long, Boolean>> states;
+
+    public BlogLikeResolver(StringRedisTemplate stringRedisTemplate,
+                            @Value("${hmdp.blog.like.local-cache.enabled:false}") boolean localCacheEnabled,
+                            @Value("${hmdp.blog.like.local-cache.maximum-size:10000}") long maximumSize,
+                            @Value("${hmdp.blog.like.local-cache.ttl-seconds:30}") long ttlSeconds,
+                            @Value("${hmdp.blog.like.local-cache.max-blogs-per-user:1024}") int maxBlogsPerUser) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.localCacheEnabled = localCacheEnabled;
+        this.maxBlogsPerUser = maxBlogsPerUser;
+        this.states = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @return blogIds中被该用户点赞过的博客id
+     */
+    public Set<Long> likedBlogIds(Long userId, Collection<Long> blogIds) {
+        Set<Long> liked = new HashSet<>();
+        if (blogIds.isEmpty()) {
+            return liked;
+        }
+        //1.查询本地缓存
+        Map<Long, Boolean> state = localCacheEnabled ? states.get(userId, key -> new ConcurrentHashMap<>()) : null;
+        List<Long> missIds = new ArrayList<>();
+        for (Long blogId : blogIds) {
+            Boolean value = state == null ? null : state.get(blogId);
+            if (value == null) {
+                missIds.add(blogId);
+            } else if (value) {
+                liked.add(blogId);
+            }
+        }
+        if (missIds.isEmpty()) {
+            return liked;
+        }
+        //2.未命中的博客一次往返查询
+        String member = userId.toString();
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (Long blogId : missIds) {
+                stringConnection.zScore(BLOG_LIKED_KEY + blogId, member);
+            }
+            return null;
+        });
+        for (int i = 0; i < missIds.size(); i++) {
+            boolean value = scores.get(i) != null;
+            if (value) {
+                liked.add(missIds.get(i));
+            }
+            if (state != null && state.size() < maxBlogsPerUser) {
+                state.put(missIds.get(i), value);
+            }
+        }
+        return liked;
+    }
+
+    //本节点点赞或取消点赞后更新缓存
+    public void onLiked(Long userId, Long blogId, boolean liked) {
+        if (!localCacheEnabled) {
+            return;
+        }
+        Map<Long, Boolean> state = states.getIfPresent(userId);
+        if (state != null) {
+            state.put(blogId, liked);
+        }
+    }
+}
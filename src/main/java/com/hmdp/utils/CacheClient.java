@@ -1,54 +1,153 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.Shop;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.hmdp.utils.RedisConstants.*;
 
 @Slf4j
 @Component
 public class CacheClient {
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
     private final StringRedisTemplate stringRedisTemplate;
+    private final LocalCacheManager localCacheManager;
+    private final CacheSerializer serializer;
+    private final CacheRebuildExecutor rebuildExecutor;
+    private final SingleFlight singleFlight = new SingleFlight();
+    //本节点正在重建的key，避免重复竞争分布式锁
+    private final Set<String> rebuildingKeys = ConcurrentHashMap.newKeySet();
+    //各前缀重建耗时的滑动平均值（毫秒）
+    private final Map<String, Long> rebuildCosts = new ConcurrentHashMap<>();
+    //各前缀的布隆过滤器
+    private final Map<String, RedisBloomFilter> bloomFilters = new ConcurrentHashMap<>();
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate){
+    @Value("${hmdp.cache.refresh.beta:1.0}")
+    private double refreshBeta;
+    @Value("${hmdp.cache.refresh.jitter:0.1}")
+    private double refreshJitter;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, LocalCacheManager localCacheManager,
+                       CacheSerializer serializer, CacheRebuildExecutor rebuildExecutor){
         this.stringRedisTemplate = stringRedisTemplate;
+        this.localCacheManager = localCacheManager;
+        this.serializer = serializer;
+        this.rebuildExecutor = rebuildExecutor;
+    }
+
+    //为指定前缀开启进程内一级缓存
+    public void enableLocalCache(String KEY_PREFIX, long maximumSize, Long time, TimeUnit unit) {
+        localCacheManager.register(KEY_PREFIX, maximumSize, time, unit);
+    }
+
+    //为指定前缀开启布隆过滤器，不存在的id直接返回空
+    public void enableBloomFilter(String KEY_PREFIX, RedisBloomFilter bloomFilter) {
+        bloomFilters.put(KEY_PREFIX, bloomFilter);
+    }
+
+    public Map<String, Object> localCacheStats() {
+        return localCacheManager.stats();
+    }
+
+    public Map<String, Object> rebuildStats() {
+        Map<String, Object> stats = rebuildExecutor.stats();
+        stats.put("rebuildingKeys", rebuildingKeys.size());
+        stats.put("rebuildCostMillis", new HashMap<>(rebuildCosts));
+        return stats;
+    }
+
+    //删除缓存，同时失效所有节点的一级缓存
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        localCacheManager.publishInvalidate(key);
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit){
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value),time,unit);
+        byte[] bytes = serializer.serialize(value);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.stringCommands().setEx(rawKey(key), unit.toSeconds(time), bytes));
     }
 
     public void setWithLogicExpire(String key,Object value,Long time, TimeUnit unit){
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        stringRedisTemplate.opsForValue().set(key,JSONUtil.toJsonStr(redisData));
+        byte[] bytes = serializer.serializeWithExpire(value, LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.stringCommands().set(rawKey(key), bytes));
+    }
+
+    //列表缓存：一次LRANGE读取，未命中则查询数据库并在一个事务中写回
+    public <R> List<R> queryListWithPassThrough(String key, Class<R> type, Supplier<List<R>> dbFallBack) {
+        //1.从redis查询缓存
+        List<byte[]> cached = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.listCommands().lRange(rawKey(key), 0, -1));
+        //2.存在则返回
+        if (cached != null && !cached.isEmpty()) {
+            List<R> list = new ArrayList<>(cached.size());
+            for (byte[] bytes : cached) {
+                list.add(serializer.deserialize(bytes, type));
+            }
+            return list;
+        }
+        //3.不存在则查询数据库
+        List<R> list = dbFallBack.get();
+        if (list == null || list.isEmpty()) {
+            return Collections.emptyList();
+        }
+        //4.写回redis，先删除再写入，避免并发重建时重复追加
+        byte[][] values = new byte[list.size()][];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = serializer.serialize(list.get(i));
+        }
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.multi();
+            connection.keyCommands().del(rawKey(key));
+            connection.listCommands().rPush(rawKey(key), values);
+            return connection.exec();
+        });
+        return list;
     }
 
     public <R,ID> R queryWithPassThrough(String KEY_PREFIX,ID id, Class<R> type, Function<ID,R> dbFallBack,Long time,TimeUnit unit) {
+        //布隆过滤器判断id不存在
+        if (!mightExist(KEY_PREFIX, id)) {
+            return null;
+        }
         String key = KEY_PREFIX + id;
+        //0.查询本地缓存
+        R local = localCacheManager.get(KEY_PREFIX, key);
+        if (local != null) {
+            return local;
+        }
         //1.从redis查询缓存
-        String Json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getBytes(key);
         //2.判断是否存在
-        if (StrUtil.isNotBlank(Json)) {
+        if (bytes != null && bytes.length > 0) {
             //3.存在则返回
-            return JSONUtil.toBean(Json,type);
+            R r = serializer.deserialize(bytes, type);
+            localCacheManager.put(KEY_PREFIX, key, r);
+            return r;
         }
         //4.不存在则判断是否为空值
-        if (Json != null) {
+        if (bytes != null) {
             return null;
         }
         //5.查询数据库
@@ -61,81 +160,379 @@ public class CacheClient {
         }
         //7.存在，写入redis
         this.set(key,r,time,unit);
+        localCacheManager.put(KEY_PREFIX, key, r);
         //8.返回
         return r;
     }
 
+    //批量查询：一次MGET读取缓存，未命中的部分一次批量查询数据库，再通过管道一次写回redis
+    public <R,ID> Map<ID,R> queryManyWithPassThrough(String KEY_PREFIX, Collection<ID> ids, Class<R> type,
+                                                    Function<Collection<ID>, Map<ID,R>> dbFallBack, Long time, TimeUnit unit) {
+        Map<ID, R> result = new LinkedHashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return result;
+        }
+        //0.查询本地缓存
+        List<ID> remoteIds = new ArrayList<>();
+        List<String> remoteKeys = new ArrayList<>();
+        for (ID id : new LinkedHashSet<>(ids)) {
+            //布隆过滤器判断id不存在
+            if (!mightExist(KEY_PREFIX, id)) {
+                continue;
+            }
+            String key = KEY_PREFIX + id;
+            R local = localCacheManager.get(KEY_PREFIX, key);
+            if (local != null) {
+                result.put(id, local);
+                continue;
+            }
+            remoteIds.add(id);
+            remoteKeys.add(key);
+        }
+        if (remoteIds.isEmpty()) {
+            return result;
+        }
+        //1.一次MGET从redis查询缓存
+        byte[][] rawKeys = new byte[remoteKeys.size()][];
+        for (int i = 0; i < rawKeys.length; i++) {
+            rawKeys[i] = rawKey(remoteKeys.get(i));
+        }
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(rawKeys));
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            ID id = remoteIds.get(i);
+            byte[] bytes = values == null ? null : values.get(i);
+            //2.存在则直接使用
+            if (bytes != null && bytes.length > 0) {
+                R r = serializer.deserialize(bytes, type);
+                result.put(id, r);
+                localCacheManager.put(KEY_PREFIX, remoteKeys.get(i), r);
+                continue;
+            }
+            //3.空值说明数据库中不存在，跳过
+            if (bytes == null) {
+                missIds.add(id);
+            }
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
+        //4.未命中的部分一次批量查询数据库
+        Map<ID, R> loaded = dbFallBack.apply(missIds);
+        Map<ID, R> found = loaded == null ? Collections.<ID, R>emptyMap() : loaded;
+        //5.通过管道一次写回redis，不存在的写入空值防缓存穿透
+        long ttlSeconds = unit.toSeconds(time);
+        long nullTtlSeconds = TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : missIds) {
+                R r = found.get(id);
+                if (r == null) {
+                    connection.stringCommands().setEx(rawKey(KEY_PREFIX + id), nullTtlSeconds, new byte[0]);
+                } else {
+                    connection.stringCommands().setEx(rawKey(KEY_PREFIX + id), ttlSeconds, serializer.serialize(r));
+                }
+            }
+            return null;
+        });
+        for (ID id : missIds) {
+            R r = found.get(id);
+            if (r != null) {
+                result.put(id, r);
+                localCacheManager.put(KEY_PREFIX, KEY_PREFIX + id, r);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
     public <R,ID> R queryWithLogicExpire(String KEY_PREFIX,ID id,Class<R> type,Function<ID,R> dbFallBack,Long time,TimeUnit unit) {
+        if (!mightExist(KEY_PREFIX, id)) {
+            return null;
+        }
         String key =KEY_PREFIX+ id;
+        //0.查询本地缓存，本地缓存同样遵循逻辑过期时间
+        RedisData local = localCacheManager.get(KEY_PREFIX, key);
+        if (local != null && local.getExpireTime().isAfter(LocalDateTime.now())) {
+            return (R) local.getData();
+        }
         //1.从redis查询缓存
-        String Json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getBytes(key);
         //2.判断是否存在
-        if (StrUtil.isBlank(Json)) {
+        if (bytes == null || bytes.length == 0) {
             //3.不存在则返回空
             return null;
         }
         //命中则反序列化
-        RedisData redisData = JSONUtil.toBean(Json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        RedisData redisData = serializer.deserializeWithExpire(bytes, type);
+        R r = (R) redisData.getData();
         LocalDateTime expireTime = redisData.getExpireTime();
         //判断是否过期
         if (expireTime.isAfter(LocalDateTime.now())) {
-            //未过期则返回数据
+            //未过期则写入本地缓存并返回数据
+            localCacheManager.put(KEY_PREFIX, key, redisData);
             return r;
         }
-        //过期，则缓存重建
+        //过期，则异步重建缓存
+        rebuildAsync(KEY_PREFIX, key, id, dbFallBack, unit.toSeconds(time), expireTime);
+        //返回旧数据
+        return r;
+    }
+
+    /**
+     * 批量查询逻辑过期的缓存：一次MGET读取，已过期的返回旧数据并逐个异步重建
+     * 未命中的部分一次批量查询数据库，带逻辑过期时间写回，不存在的写入空值
+     */
+    @SuppressWarnings("unchecked")
+    public <R,ID> Map<ID,R> queryManyWithLogicExpire(String KEY_PREFIX, Collection<ID> ids, Class<R> type,
+                                                     Function<Collection<ID>, Map<ID,R>> dbFallBack, Long time, TimeUnit unit) {
+        Map<ID, R> result = new LinkedHashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return result;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        //0.查询本地缓存
+        List<ID> remoteIds = new ArrayList<>();
+        List<String> remoteKeys = new ArrayList<>();
+        for (ID id : new LinkedHashSet<>(ids)) {
+            if (!mightExist(KEY_PREFIX, id)) {
+                continue;
+            }
+            String key = KEY_PREFIX + id;
+            RedisData local = localCacheManager.get(KEY_PREFIX, key);
+            if (local != null && local.getExpireTime().isAfter(now)) {
+                result.put(id, (R) local.getData());
+                continue;
+            }
+            remoteIds.add(id);
+            remoteKeys.add(key);
+        }
+        if (remoteIds.isEmpty()) {
+            return result;
+        }
+        //1.一次MGET从redis查询缓存
+        byte[][] rawKeys = new byte[remoteKeys.size()][];
+        for (int i = 0; i < rawKeys.length; i++) {
+            rawKeys[i] = rawKey(remoteKeys.get(i));
+        }
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(rawKeys));
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            ID id = remoteIds.get(i);
+            String key = remoteKeys.get(i);
+            byte[] bytes = values == null ? null : values.get(i);
+            if (bytes == null) {
+                missIds.add(id);
+                continue;
+            }
+            //空值说明数据库中不存在
+            if (bytes.length == 0) {
+                continue;
+            }
+            RedisData redisData = serializer.deserializeWithExpire(bytes, type);
+            result.put(id, (R) redisData.getData());
+            if (redisData.getExpireTime().isAfter(now)) {
+                localCacheManager.put(KEY_PREFIX, key, redisData);
+            } else {
+                //2.过期则异步重建，返回旧数据
+                rebuildAsync(KEY_PREFIX, key, id, one -> dbFallBack.apply(Collections.singletonList(one)).get(one),
+                        unit.toSeconds(time), redisData.getExpireTime());
+            }
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
+        //3.未命中的部分一次批量查询数据库，通过管道一次写回
+        Map<ID, R> loaded = dbFallBack.apply(missIds);
+        Map<ID, R> found = loaded == null ? Collections.<ID, R>emptyMap() : loaded;
+        LocalDateTime expireTime = now.plusSeconds(unit.toSeconds(time));
+        long nullTtlSeconds = TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : missIds) {
+                R r = found.get(id);
+                if (r == null) {
+                    connection.stringCommands().setEx(rawKey(KEY_PREFIX + id), nullTtlSeconds, new byte[0]);
+                } else {
+                    connection.stringCommands().set(rawKey(KEY_PREFIX + id), serializer.serializeWithExpire(r, expireTime));
+                }
+            }
+            return null;
+        });
+        for (ID id : missIds) {
+            R r = found.get(id);
+            if (r != null) {
+                result.put(id, r);
+                RedisData redisData = new RedisData();
+                redisData.setData(r);
+                redisData.setExpireTime(expireTime);
+                localCacheManager.put(KEY_PREFIX, KEY_PREFIX + id, redisData);
+            }
+        }
+        return result;
+    }
+
+    //逻辑过期+概率提前刷新（XFetch）：临近过期时按重建耗时加权，以一定概率提前异步重建，过期时间加入随机抖动
+    @SuppressWarnings("unchecked")
+    public <R,ID> R queryWithEarlyRefresh(String KEY_PREFIX,ID id,Class<R> type,Function<ID,R> dbFallBack,Long time,TimeUnit unit) {
+        if (!mightExist(KEY_PREFIX, id)) {
+            return null;
+        }
+        String key = KEY_PREFIX + id;
+        //0.查询本地缓存
+        RedisData redisData = localCacheManager.get(KEY_PREFIX, key);
+        if (redisData == null || !redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+            //1.从redis查询缓存
+            byte[] bytes = getBytes(key);
+            //2.不存在则返回空
+            if (bytes == null || bytes.length == 0) {
+                return null;
+            }
+            redisData = serializer.deserializeWithExpire(bytes, type);
+            if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                localCacheManager.put(KEY_PREFIX, key, redisData);
+            }
+        }
+        //3.已过期或命中提前刷新概率，则异步重建
+        if (shouldRefresh(KEY_PREFIX, redisData.getExpireTime())) {
+            rebuildAsync(KEY_PREFIX, key, id, dbFallBack, jitter(unit.toSeconds(time)), redisData.getExpireTime());
+        }
+        //4.返回当前数据
+        return (R) redisData.getData();
+    }
+
+    //XFetch：now - cost * beta * ln(rand) >= expire 时刷新
+    private boolean shouldRefresh(String KEY_PREFIX, LocalDateTime expireTime) {
+        long expireMillis = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long now = System.currentTimeMillis();
+        if (now >= expireMillis) {
+            return true;
+        }
+        long cost = rebuildCosts.getOrDefault(KEY_PREFIX, 0L);
+        if (cost == 0) {
+            return false;
+        }
+        double gap = cost * refreshBeta * -Math.log(ThreadLocalRandom.current().nextDouble());
+        return now + gap >= expireMillis;
+    }
+
+    //在原有过期时间基础上随机缩短，避免同一批key同时过期
+    private long jitter(long seconds) {
+        if (refreshJitter <= 0) {
+            return seconds;
+        }
+        return seconds - (long) (seconds * refreshJitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * @param seenExpireTime 触发重建时读到的过期时间
+     */
+    private <R,ID> void rebuildAsync(String KEY_PREFIX, String key, ID id, Function<ID,R> dbFallBack, long expireSeconds,
+                                     LocalDateTime seenExpireTime) {
+        //本节点已在重建
+        if (!rebuildingKeys.add(key)) {
+            return;
+        }
         //获取互斥锁
         String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        //判断获取是否成功
-        if (isLock) {
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    //重建缓存
-                    //查询数据库
-                    R r1 = dbFallBack.apply(id);
-                    //写回redis
-                    this.setWithLogicExpire(key,r1, time,unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    unLock(lockKey);
+        if (!tryLock(lockKey)) {
+            rebuildingKeys.remove(key);
+            return;
+        }
+        //获取锁后再次检查，其他节点可能刚完成重建，只读取过期时间，不解析数据
+        byte[] current = getBytes(key);
+        if (current != null && current.length > 0 && serializer.readExpireTime(current).isAfter(seenExpireTime)) {
+            unLock(lockKey);
+            rebuildingKeys.remove(key);
+            return;
+        }
+        boolean submitted = rebuildExecutor.submit(() -> {
+            try {
+                //查询数据库
+                long begin = System.currentTimeMillis();
+                R r = dbFallBack.apply(id);
+                long cost = System.currentTimeMillis() - begin;
+                rebuildCosts.merge(KEY_PREFIX, cost, (old, c) -> (old * 7 + c) / 8);
+                //写回redis，数据已不存在则删除缓存
+                if (r == null) {
+                    stringRedisTemplate.delete(key);
+                } else {
+                    this.setWithLogicExpire(key, r, expireSeconds, TimeUnit.SECONDS);
                 }
-            });
+            } catch (Exception e) {
+                log.error("缓存重建失败:{}", key, e);
+            } finally {
+                unLock(lockKey);
+                rebuildingKeys.remove(key);
+            }
+        });
+        //线程池已满，放弃本次重建
+        if (!submitted) {
+            log.warn("缓存重建队列已满，放弃重建:{}", key);
+            unLock(lockKey);
+            rebuildingKeys.remove(key);
         }
-        //返回旧数据
-        return r;
     }
 
-    //互斥锁解决缓存击穿
+    //互斥锁解决缓存击穿，同一节点上的并发未命中合并为一次重建
     public <R,ID>R queryWithMutex(String KEY_PREFIX,ID id,Class<R> type,Function<ID,R> dbFallback,Long time,TimeUnit unit) {
-        String key = CACHE_SHOP_KEY + id;
+        if (!mightExist(KEY_PREFIX, id)) {
+            return null;
+        }
+        String key = KEY_PREFIX + id;
+        //0.查询本地缓存
+        R local = localCacheManager.get(KEY_PREFIX, key);
+        if (local != null) {
+            return local;
+        }
         //1.从redis查询缓存
-        String Json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = getBytes(key);
         //2.判断是否存在
-        if (StrUtil.isNotBlank(Json)) {
+        if (bytes != null && bytes.length > 0) {
             //3.存在则返回
-            return JSONUtil.toBean(Json, type);
+            R r = serializer.deserialize(bytes, type);
+            localCacheManager.put(KEY_PREFIX, key, r);
+            return r;
         }
         //4.不存在则判断是否为空值
-        if (Json != null) {
+        if (bytes != null) {
             return null;
         }
-        String lockKey = null;
-        R r = null;
-        try {
-            //实现缓存重建
-            //5.1获取互斥锁
-            lockKey = LOCK_SHOP_KEY + id;
-            boolean isLock = tryLock(lockKey);
-            //5.2判断是否成功
-            if (!isLock) {
-                //5.3失败则等待重试
+        //5.实现缓存重建，同一个key在本节点只有一个线程去竞争分布式锁，其余线程等待其结果
+        R r = singleFlight.execute(key, () -> rebuildWithMutex(key, id, type, dbFallback, time, unit));
+        localCacheManager.put(KEY_PREFIX, key, r);
+        return r;
+    }
+
+    private <R,ID> R rebuildWithMutex(String key,ID id,Class<R> type,Function<ID,R> dbFallback,Long time,TimeUnit unit) {
+        String lockKey = LOCK_SHOP_KEY + id;
+        //5.1获取互斥锁，失败说明其他节点正在重建，等待后重新查询redis
+        while (!tryLock(lockKey)) {
+            try {
                 Thread.sleep(50);
-                return queryWithMutex(KEY_PREFIX,id,type,dbFallback,time,unit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            byte[] bytes = getBytes(key);
+            if (bytes != null && bytes.length > 0) {
+                return serializer.deserialize(bytes, type);
             }
-            //5.4成功 查询数据库
-            r = dbFallback.apply(id);
+            if (bytes != null) {
+                return null;
+            }
+        }
+        try {
+            //5.2获取锁成功后再次检查缓存，其他节点可能刚完成重建
+            byte[] bytes = getBytes(key);
+            if (bytes != null && bytes.length > 0) {
+                return serializer.deserialize(bytes, type);
+            }
+            if (bytes != null) {
+                return null;
+            }
+            //5.3查询数据库
+            R r = dbFallback.apply(id);
             //6.不存在，返回错误
             if (r == null) {
                 //将空值写入redis，防缓存穿透
@@ -143,18 +540,31 @@ public class CacheClient {
                 return null;
             }
             //7.存在，写入redis
-            stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(r), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            this.set(key, r, time, unit);
+            return r;
         } finally {
             //8.释放互斥锁
             unLock(lockKey);
         }
+    }
 
+    private boolean mightExist(String KEY_PREFIX, Object id) {
+        RedisBloomFilter bloomFilter = bloomFilters.get(KEY_PREFIX);
+        if (bloomFilter == null || !(id instanceof Number)) {
+            return true;
+        }
+        return bloomFilter.mightContain(((Number) id).longValue());
+    }
 
-        //9.返回
-        return r;
+    private byte[] getBytes(String key) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(rawKey(key)));
     }
+
+    private static byte[] rawKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
     //互斥锁实现
     private boolean tryLock(String key) {
         Boolean lock = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
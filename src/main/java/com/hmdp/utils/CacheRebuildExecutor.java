@@ -0,0 +1,53 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存重建线程池，有界队列，队列满时拒绝并计数
+ */
+public class CacheRebuildExecutor {
+    private final ThreadPoolExecutor executor;
+    private final LongAdder rejectedCount = new LongAdder();
+
+    public CacheRebuildExecutor(int threads, int queueCapacity) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new NamedThreadFactory("cache-rebuild-", true),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    //提交重建任务，被拒绝时返回false，由调用方释放已获取的资源
+    public boolean submit(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCount.increment();
+            return false;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("activeCount", executor.getActiveCount());
+        stats.put("queueSize", executor.getQueue().size());
+        stats.put("queueRemainingCapacity", executor.getQueue().remainingCapacity());
+        stats.put("completedTaskCount", executor.getCompletedTaskCount());
+        stats.put("rejectedCount", rejectedCount.sum());
+        return stats;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,28 @@
+package com.hmdp.utils;
+
+import java.time.LocalDateTime;
+
+/**
+ * 缓存值的序列化方式
+ */
+public interface CacheSerializer {
+
+    byte[] serialize(Object value);
+
+    <T> T deserialize(byte[] bytes, Class<T> type);
+
+    /**
+     * 序列化带逻辑过期时间的值
+     */
+    byte[] serializeWithExpire(Object value, LocalDateTime expireTime);
+
+    /**
+     * 只读取逻辑过期时间，不解析数据本身
+     */
+    LocalDateTime readExpireTime(byte[] bytes);
+
+    /**
+     * 解析带逻辑过期时间的值，data为反序列化后的对象
+     */
+    RedisData deserializeWithExpire(byte[] bytes, Class<?> type);
+}
@@ -0,0 +1,195 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.FEED_CELEBRITY_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_OUTBOX_KEY;
+import static com.hmdp.utils.RedisConstants.FOLLOWS_KEY;
+
+/**
+ * 推拉结合的关注流
+ * 普通用户发布的博客推送到每个粉丝的收件箱feed:{userId}；粉丝数较多的用户只写入自己的发件箱，
+ * 读取时把收件箱和所关注大V的发件箱按时间合并；推送在后台线程中按批管道执行，不占用请求线程
+ */
+@Slf4j
+@Component
+public class FeedManager {
+    //每次管道推送的粉丝数
+    private static final int PUSH_BATCH_SIZE = 500;
+    //同一时间戳时按博客id降序，与zset中同分成员的顺序一致
+    private static final Comparator<ZSetOperations.TypedTuple<String>> ORDER =
+            Comparator.<ZSetOperations.TypedTuple<String>>comparingDouble(ZSetOperations.TypedTuple::getScore)
+                    .thenComparing(ZSetOperations.TypedTuple::getValue)
+                    .reversed();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long inboxSize;
+    private final long outboxSize;
+    private final ThreadPoolExecutor pushExecutor;
+
+    public FeedManager(StringRedisTemplate stringRedisTemplate,
+                       @Value("${hmdp.feed.inbox-size:1000}") long inboxSize,
+                       @Value("${hmdp.feed.outbox-size:1000}") long outboxSize,
+                       @Value("${hmdp.feed.push-threads:2}") int pushThreads,
+                       @Value("${hmdp.feed.push-queue-capacity:1000}") int pushQueueCapacity) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.inboxSize = inboxSize;
+        this.outboxSize = outboxSize;
+        //队列满时由调用线程执行，推送不会丢失
+        this.pushExecutor = new ThreadPoolExecutor(pushThreads, pushThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(pushQueueCapacity),
+                new NamedThreadFactory("feed-push-", true),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    //在推送线程中执行发布任务
+    public void submit(Runnable task) {
+        pushExecutor.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("推送关注流失败", e);
+            }
+        });
+    }
+
+    //按批管道写入粉丝收件箱，并裁剪到inboxSize条
+    public void pushToInboxes(List<Long> followerIds, Long blogId, long timestamp) {
+        String member = blogId.toString();
+        for (int from = 0; from < followerIds.size(); from += PUSH_BATCH_SIZE) {
+            List<Long> batch = followerIds.subList(from, Math.min(from + PUSH_BATCH_SIZE, followerIds.size()));
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                for (Long followerId : batch) {
+                    String key = FEED_KEY + followerId;
+                    stringConnection.zAdd(key, timestamp, member);
+                    stringConnection.zRemRange(key, 0, -inboxSize - 1);
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 写入作者的发件箱，并把作者标记为拉模式
+     * 标记不会撤销，粉丝数回落后仍然从发件箱拉取，避免已发布的博客从关注流中消失
+     */
+    public void pushToOutbox(Long authorId, Long blogId, long timestamp) {
+        String key = FEED_OUTBOX_KEY + authorId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            stringConnection.sAdd(FEED_CELEBRITY_KEY, authorId.toString());
+            stringConnection.zAdd(key, timestamp, blogId.toString());
+            stringConnection.zRemRange(key, 0, -outboxSize - 1);
+            return null;
+        });
+    }
+
+    public boolean isCelebrity(Long authorId) {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(FEED_CELEBRITY_KEY, authorId.toString()));
+    }
+
+    //该用户关注的拉模式作者
+    public List<Long> followedCelebrities(Long userId) {
+        Set<String> celebrities = stringRedisTemplate.opsForSet().intersect(FOLLOWS_KEY + userId, FEED_CELEBRITY_KEY);
+        if (celebrities == null || celebrities.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return celebrities.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 查询时间戳不大于max的博客，跳过前offset条，最多返回count条
+     * 收件箱和各发件箱各取前offset+count条，一次往返后多路归并，游标含义与单个收件箱相同
+     * @return 博客id及发布时间，按时间降序
+     */
+    public List<ZSetOperations.TypedTuple<String>> read(Long userId, List<Long> celebrityIds,
+                                                       long max, int offset, int count) {
+        List<String> keys = new ArrayList<>(celebrityIds.size() + 1);
+        keys.add(FEED_KEY + userId);
+        for (Long celebrityId : celebrityIds) {
+            keys.add(FEED_OUTBOX_KEY + celebrityId);
+        }
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String key : keys) {
+                stringConnection.zRevRangeByScoreWithScores(key, 0, max, 0, offset + count);
+            }
+            return null;
+        });
+        //多路归并，每次取出各路当前最新的一条
+        PriorityQueue<Source> queue = new PriorityQueue<>((a, b) -> ORDER.compare(a.head, b.head));
+        for (Object result : results) {
+            @SuppressWarnings("unchecked")
+            Set<ZSetOperations.TypedTuple<String>> tuples = (Set<ZSetOperations.TypedTuple<String>>) result;
+            if (tuples != null && !tuples.isEmpty()) {
+                queue.add(new Source(tuples.iterator()));
+            }
+        }
+        List<ZSetOperations.TypedTuple<String>> merged = new ArrayList<>(count);
+        //作者切换为拉模式前推送过的博客可能同时出现在收件箱和发件箱
+        Set<String> seen = new HashSet<>();
+        int skipped = 0;
+        while (!queue.isEmpty() && merged.size() < count) {
+            Source source = queue.poll();
+            ZSetOperations.TypedTuple<String> tuple = source.head;
+            if (source.next()) {
+                queue.add(source);
+            }
+            if (!seen.add(tuple.getValue())) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            merged.add(tuple);
+        }
+        return merged;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        pushExecutor.shutdown();
+    }
+
+    private static class Source {
+        private final Iterator<ZSetOperations.TypedTuple<String>> iterator;
+        private ZSetOperations.TypedTuple<String> head;
+
+        private Source(Iterator<ZSetOperations.TypedTuple<String>> iterator) {
+            this.iterator = iterator;
+            this.head = iterator.next();
+        }
+
+        private boolean next() {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            head = iterator.next();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 两级锁：先获取本地分段锁，需要跨节点互斥时再获取分布式锁
+ * 同一节点内的竞争在本地解决，不产生redis请求；只有拿到本地锁的线程才会去竞争分布式锁
+ */
+public class HierarchicalLock implements ILock {
+    //本地分段锁数量，必须是2的幂
+    private static final int STRIPES = 1024;
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    private final ReentrantLock localLock;
+    private final ILock remoteLock;
+
+    //只使用本地锁，适用于同一个key只会在一个节点上处理的场景
+    public HierarchicalLock(String name) {
+        this(name, null);
+    }
+
+    /**
+     * @param remoteLock 分布式锁，为null时只使用本地锁
+     */
+    public HierarchicalLock(String name, ILock remoteLock) {
+        int hash = name.hashCode();
+        this.localLock = LOCKS[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+        this.remoteLock = remoteLock;
+    }
+
+    @Override
+    public boolean tryLock(long timeoutSec) {
+        if (!localLock.tryLock()) {
+            return false;
+        }
+        if (remoteLock == null) {
+            return true;
+        }
+        boolean success = false;
+        try {
+            success = remoteLock.tryLock(timeoutSec);
+            return success;
+        } finally {
+            //获取分布式锁失败时释放本地锁
+            if (!success) {
+                localLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        if (!localLock.tryLock(waitTime, unit)) {
+            return false;
+        }
+        if (remoteLock == null) {
+            return true;
+        }
+        boolean success = false;
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            success = remoteLock.tryLock(remaining, leaseTime > 0 ? unit.toNanos(leaseTime) : leaseTime, TimeUnit.NANOSECONDS);
+            return success;
+        } finally {
+            if (!success) {
+                localLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void unLock() {
+        try {
+            if (remoteLock != null) {
+                remoteLock.unLock();
+            }
+        } finally {
+            localLock.unlock();
+        }
+    }
+}
@@ -1,8 +1,19 @@
 package com.hmdp.utils;
 
+import java.util.concurrent.TimeUnit;
+
 public interface ILock {
 
     public boolean tryLock(long timeoutSec);
 
+    /**
+     * 在等待时间内尝试获取锁
+     * @param waitTime 最长等待时间
+     * @param leaseTime 锁的有效期，小于等于0时由看门狗自动续期，直到释放锁
+     * @param unit 时间单位
+     * @return 是否获取成功
+     */
+    public boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException;
+
     public void unLock();
 }
@@ -0,0 +1,43 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * 基于hutool的JSON序列化，与原有缓存格式一致
+ */
+public class JsonCacheSerializer implements CacheSerializer {
+
+    @Override
+    public byte[] serialize(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> type) {
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+    }
+
+    @Override
+    public byte[] serializeWithExpire(Object value, LocalDateTime expireTime) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(expireTime);
+        return serialize(redisData);
+    }
+
+    @Override
+    public LocalDateTime readExpireTime(byte[] bytes) {
+        return deserialize(bytes, RedisData.class).getExpireTime();
+    }
+
+    @Override
+    public RedisData deserializeWithExpire(byte[] bytes, Class<?> type) {
+        RedisData redisData = deserialize(bytes, RedisData.class);
+        redisData.setData(JSONUtil.toBean((JSONObject) redisData.getData(), type));
+        return redisData;
+    }
+}
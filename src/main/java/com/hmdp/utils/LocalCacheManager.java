@@ -0,0 +1,103 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * 进程内一级缓存，按key前缀隔离，淘汰策略为W-TinyLFU
+ * 通过redis的发布订阅在各节点之间同步失效
+ */
+@Slf4j
+@Component
+public class LocalCacheManager implements MessageListener {
+    private final Map<String, Cache<String, Object>> caches = new ConcurrentHashMap<>();
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public LocalCacheManager(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    //为指定前缀开启本地缓存
+    public void register(String keyPrefix, long maximumSize, Long time, TimeUnit unit) {
+        Cache<String, Object> cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(time, unit)
+                .recordStats()
+                .build();
+        caches.put(keyPrefix, cache);
+    }
+
+    public boolean isEnabled(String keyPrefix) {
+        return caches.containsKey(keyPrefix);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String keyPrefix, String key) {
+        Cache<String, Object> cache = caches.get(keyPrefix);
+        if (cache == null) {
+            return null;
+        }
+        return (T) cache.getIfPresent(key);
+    }
+
+    public void put(String keyPrefix, String key, Object value) {
+        Cache<String, Object> cache = caches.get(keyPrefix);
+        if (cache == null || value == null) {
+            return;
+        }
+        cache.put(key, value);
+    }
+
+    //仅失效本节点
+    public void invalidate(String key) {
+        for (Map.Entry<String, Cache<String, Object>> entry : caches.entrySet()) {
+            if (key.startsWith(entry.getKey())) {
+                entry.getValue().invalidate(key);
+            }
+        }
+    }
+
+    //失效本节点并通知其他节点
+    public void publishInvalidate(String key) {
+        invalidate(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到缓存失效通知:{}", key);
+        invalidate(key);
+    }
+
+    //各前缀的命中统计，用于评估容量
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Cache<String, Object>> entry : caches.entrySet()) {
+            Cache<String, Object> cache = entry.getValue();
+            CacheStats stats = cache.stats();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("size", cache.estimatedSize());
+            item.put("hitCount", stats.hitCount());
+            item.put("missCount", stats.missCount());
+            item.put("hitRate", stats.hitRate());
+            item.put("evictionCount", stats.evictionCount());
+            result.put(entry.getKey(), item);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,100 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 登录用户的本地缓存
+ * 本地命中时不访问redis，redis中的有效期只在剩余时间低于阈值时才续期
+ * 登出时通过发布订阅通知所有节点失效
+ */
+@Slf4j
+@Component
+public class LoginSessionCache implements MessageListener {
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Cache<String, LoginSession> sessions;
+    //redis中剩余有效期低于该值时续期
+    private final long renewThresholdMillis;
+
+    public LoginSessionCache(StringRedisTemplate stringRedisTemplate,
+                             @Value("${hmdp.login.session-cache.maximum-size:100000}") long maximumSize,
+                             @Value("${hmdp.login.session-cache.ttl-seconds:30}") long ttlSeconds,
+                             @Value("${hmdp.login.renew-interval-minutes:10}") long renewIntervalMinutes) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        this.renewThresholdMillis = TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL - renewIntervalMinutes);
+    }
+
+    public UserDTO get(String token) {
+        String key = LOGIN_USER_KEY + token;
+        long now = System.currentTimeMillis();
+        //1.查询本地缓存
+        LoginSession session = sessions.getIfPresent(token);
+        if (session == null) {
+            //2.未命中则一次往返查询用户及剩余有效期
+            List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                stringConnection.hGetAll(key);
+                stringConnection.pTtl(key);
+                return null;
+            });
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> userMap = (Map<Object, Object>) results.get(0);
+            if (userMap == null || userMap.isEmpty()) {
+                return null;
+            }
+            Long ttl = (Long) results.get(1);
+            UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
+            session = new LoginSession(userDTO, ttl == null || ttl < 0 ? now : now + ttl);
+            sessions.put(token, session);
+        }
+        //3.剩余有效期低于阈值时才刷新expire
+        if (session.expireAt - now < renewThresholdMillis) {
+            stringRedisTemplate.expire(key, LOGIN_USER_TTL, TimeUnit.MINUTES);
+            session.expireAt = now + TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL);
+        }
+        return session.user;
+    }
+
+    //删除登录信息并通知所有节点
+    public void invalidate(String token) {
+        sessions.invalidate(token);
+        stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        stringRedisTemplate.convertAndSend(LOGIN_INVALIDATE_CHANNEL, token);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        sessions.invalidate(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private static class LoginSession {
+        private final UserDTO user;
+        private volatile long expireAt;
+
+        private LoginSession(UserDTO user, long expireAt) {
+            this.user = user;
+            this.expireAt = expireAt;
+        }
+    }
+}
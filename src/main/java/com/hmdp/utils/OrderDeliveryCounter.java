@@ -0,0 +1,38 @@
+package com.hmdp.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 订单消息的有效投递次数
+ * stream每次把消息读给消费者都会增加投递次数，获取订单锁超时只是稍后重试，不算处理失败，从投递次数中扣除
+ * 只在单个消费者线程内使用，非线程安全
+ */
+public class OrderDeliveryCounter {
+    private final int maxRetry;
+    //消息id -> 获取订单锁超时的次数
+    private final Map<String, Integer> lockTimeouts = new HashMap<>();
+
+    public OrderDeliveryCounter(int maxRetry) {
+        this.maxRetry = maxRetry;
+    }
+
+    public void lockTimeout(String id) {
+        lockTimeouts.merge(id, 1, Integer::sum);
+    }
+
+    //扣除获取锁超时之后的投递次数
+    public long deliveries(String id, long totalDeliveries) {
+        return Math.max(0, totalDeliveries - lockTimeouts.getOrDefault(id, 0));
+    }
+
+    //有效投递次数达到上限，应转入死信队列
+    public boolean exhausted(String id, long totalDeliveries) {
+        return deliveries(id, totalDeliveries) >= maxRetry;
+    }
+
+    //消息已ACK或转入死信队列，不再需要记录
+    public void done(String id) {
+        lockTimeouts.remove(id);
+    }
+}
@@ -0,0 +1,211 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 订单消息队列分区
+ * 订单按voucherId分配到K个stream，同一优惠券的订单始终在同一分区内
+ * 各节点的消费者定期上报心跳，按名称排序后轮流分配分区，每个分区通过租约保证同一时间只有一个消费者读取
+ * 租约由独立的心跳线程续约，处理耗时较长的批次时租约不会过期；消费者处理每批消息前确认仍持有租约
+ */
+@Slf4j
+@Component
+public class OrderStreamPartitioner {
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT;
+    private static final DefaultRedisScript<Long> AUTO_CLAIM_SCRIPT;
+
+    static {
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setLocation(new ClassPathResource("lease.lua"));
+        LEASE_SCRIPT.setResultType(Long.class);
+        AUTO_CLAIM_SCRIPT = new DefaultRedisScript<>();
+        AUTO_CLAIM_SCRIPT.setLocation(new ClassPathResource("autoClaim.lua"));
+        AUTO_CLAIM_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.order.stream.partitions:1}")
+    private int partitions;
+    //分区租约时长，消费者超过该时间没有心跳视为下线
+    @Value("${hmdp.order.stream.lease-millis:30000}")
+    private long leaseMillis;
+    //pending消息空闲超过该时间后被其他消费者认领
+    @Value("${hmdp.order.stream.claim-idle-millis:60000}")
+    private long claimIdleMillis;
+
+    //consumer -> (分区 -> 本地记录的租约到期时间)
+    private final Map<String, Map<Integer, Long>> leases = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeatExecutor =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("order-partition-heartbeat-", true));
+
+    @PostConstruct
+    public void init() {
+        long interval = getRenewIntervalMillis();
+        heartbeatExecutor.scheduleWithFixedDelay(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        heartbeatExecutor.shutdownNow();
+    }
+
+    //优惠券所在的分区，只有一个分区时沿用原队列名
+    public String streamOf(Long voucherId) {
+        return partitions <= 1 ? SECKILL_ORDER_STREAM : partitionStream((int) (voucherId % partitions));
+    }
+
+    /**
+     * 分区数由1调整为多个后，原队列stream.orders中可能还有未消费的订单，由持有分区0的消费者继续消费
+     * @param owned 消费者持有租约的分区
+     * @return 需要继续消费的原队列，不需要时返回null
+     */
+    public String legacyStreamOf(List<String> owned) {
+        return partitions > 1 && owned.contains(partitionStream(0)) ? SECKILL_ORDER_STREAM : null;
+    }
+
+    public List<String> streams() {
+        List<String> streams = new ArrayList<>(partitions);
+        for (int i = 0; i < Math.max(1, partitions); i++) {
+            streams.add(partitions <= 1 ? SECKILL_ORDER_STREAM : partitionStream(i));
+        }
+        return streams;
+    }
+
+    //续约间隔
+    public long getRenewIntervalMillis() {
+        return leaseMillis / 3;
+    }
+
+    public long getClaimIdleMillis() {
+        return claimIdleMillis;
+    }
+
+    /**
+     * 上报心跳并重新分配分区
+     * @param consumer 消费者名称
+     * @return 当前消费者持有租约的分区
+     */
+    public List<String> assign(String consumer) {
+        long now = System.currentTimeMillis();
+        stringRedisTemplate.opsForZSet().add(ORDER_CONSUMER_KEY, consumer, now);
+        stringRedisTemplate.opsForZSet().removeRangeByScore(ORDER_CONSUMER_KEY, 0, now - leaseMillis);
+        Set<String> members = stringRedisTemplate.opsForZSet().range(ORDER_CONSUMER_KEY, 0, -1);
+        List<String> consumers = members == null ? new ArrayList<>() : new ArrayList<>(members);
+        Collections.sort(consumers);
+        int index = consumers.indexOf(consumer);
+        List<String> streams = streams();
+        List<String> owned = new ArrayList<>();
+        Map<Integer, Long> held = leases.computeIfAbsent(consumer, key -> new ConcurrentHashMap<>());
+        for (int i = 0; i < streams.size(); i++) {
+            String leaseKey = ORDER_PARTITION_LEASE_KEY + i;
+            if (index >= 0 && i % consumers.size() == index) {
+                //上一个持有者的租约未过期时暂不读取，避免两个消费者同时处理同一分区
+                if (lease(leaseKey, consumer, true)) {
+                    held.put(i, now + leaseMillis);
+                    owned.add(streams.get(i));
+                } else {
+                    held.remove(i);
+                }
+            } else {
+                held.remove(i);
+                lease(leaseKey, consumer, false);
+            }
+        }
+        return owned;
+    }
+
+    /**
+     * 消费者是否仍持有该分区的租约，按本地记录的到期时间判断，不访问redis
+     * 心跳续约失败或redis不可用时，到期时间不再延长，租约在redis中过期前本地即视为失效
+     */
+    public boolean owns(String consumer, String stream) {
+        Map<Integer, Long> held = leases.get(consumer);
+        if (held == null) {
+            return false;
+        }
+        int partition = streams().indexOf(stream);
+        //原队列跟随分区0的租约
+        if (partition < 0 && SECKILL_ORDER_STREAM.equals(stream)) {
+            partition = 0;
+        }
+        Long expireAt = held.get(partition);
+        return expireAt != null && System.currentTimeMillis() < expireAt;
+    }
+
+    //续约各消费者已持有的分区，不重新分配分区；异常不抛出，避免后续心跳被取消
+    private void heartbeat() {
+        for (Map.Entry<String, Map<Integer, Long>> entry : leases.entrySet()) {
+            String consumer = entry.getKey();
+            Map<Integer, Long> held = entry.getValue();
+            try {
+                long now = System.currentTimeMillis();
+                stringRedisTemplate.opsForZSet().add(ORDER_CONSUMER_KEY, consumer, now);
+                for (Integer partition : held.keySet()) {
+                    if (lease(ORDER_PARTITION_LEASE_KEY + partition, consumer, true)) {
+                        held.put(partition, now + leaseMillis);
+                    } else {
+                        held.remove(partition);
+                        log.warn("消费者{}失去分区{}的租约", consumer, partition);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("分区租约续约失败，消费者：{}", consumer, e);
+            }
+        }
+    }
+
+    //下线时释放租约，其他消费者无需等待租约过期
+    public void release(String consumer) {
+        leases.remove(consumer);
+        stringRedisTemplate.opsForZSet().remove(ORDER_CONSUMER_KEY, consumer);
+        for (int i = 0; i < Math.max(1, partitions); i++) {
+            lease(ORDER_PARTITION_LEASE_KEY + i, consumer, false);
+        }
+    }
+
+    //认领已下线消费者遗留的pending消息
+    public long claimIdle(String stream, String group, String consumer, int count) {
+        Long claimed = stringRedisTemplate.execute(
+                AUTO_CLAIM_SCRIPT,
+                Collections.singletonList(stream),
+                group, consumer, String.valueOf(claimIdleMillis), String.valueOf(count)
+        );
+        return claimed == null ? 0 : claimed;
+    }
+
+    private boolean lease(String leaseKey, String consumer, boolean acquire) {
+        Long result = stringRedisTemplate.execute(
+                LEASE_SCRIPT,
+                Collections.singletonList(leaseKey),
+                consumer, String.valueOf(leaseMillis), acquire ? "1" : "0"
+        );
+        return result != null && result == 1;
+    }
+
+    private static String partitionStream(int partition) {
+        return SECKILL_ORDER_STREAM + ":" + partition;
+    }
+}
@@ -0,0 +1,242 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_CHANNEL;
+import static com.hmdp.utils.RedisConstants.BLOOM_KEY;
+
+/**
+ * 布隆过滤器，用于拦截不存在的id，防止缓存穿透
+ * 本地位图负责查询，redis位图作为各节点之间的副本，新增的id通过发布订阅同步到其他节点
+ * 元素会过期的场景可以定期重建，重建后各节点从redis重新加载位图
+ */
+@Slf4j
+public class RedisBloomFilter implements MessageListener {
+    //通知其他节点从redis重新加载位图
+    private static final String REBUILD_MESSAGE = "rebuild";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String key;
+    private final String channel;
+    private final long numBits;
+    private final int numHashes;
+    //重建时整体替换，替换与写入互斥，查询不加锁
+    private volatile AtomicLongArray bits;
+
+    /**
+     * @param name               过滤器名称
+     * @param expectedInsertions 预计元素数量
+     * @param fpp                期望误判率
+     * @param maxBytes           位图最大占用内存
+     */
+    public RedisBloomFilter(String name, long expectedInsertions, double fpp, long maxBytes,
+                            StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.key = BLOOM_KEY + name;
+        this.channel = BLOOM_CHANNEL + name;
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        if (m > maxBytes * 8) {
+            log.warn("布隆过滤器{}超出内存限制，误判率将高于{}", name, fpp);
+            m = maxBytes * 8;
+        }
+        //按64位对齐
+        long words = Math.max(1, (m + 63) >>> 6);
+        this.numBits = words << 6;
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+        this.bits = new AtomicLongArray((int) words);
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public boolean mightContain(long id) {
+        AtomicLongArray bits = this.bits;
+        long hash = mix64(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long index = index(h1, h2, i);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //新增id：写入本地位图、redis位图，并通知其他节点
+    public void put(long id) {
+        putLocal(id);
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] rawChannel = channel.getBytes(StandardCharsets.UTF_8);
+        byte[] message = String.valueOf(id).getBytes(StandardCharsets.UTF_8);
+        long hash = mix64(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 1; i <= numHashes; i++) {
+                connection.stringCommands().setBit(rawKey, index(h1, h2, i), true);
+            }
+            connection.publish(rawChannel, message);
+            return null;
+        });
+    }
+
+    //启动时加载：先写入数据库中的全部id，再与redis位图合并，最后把结果合并回redis
+    public void init(Collection<Long> ids) {
+        for (Long id : ids) {
+            putLocal(id);
+        }
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] remote = stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(rawKey));
+        if (remote != null) {
+            synchronized (this) {
+                fromRedisBytes(bits, remote);
+            }
+        }
+        byte[] local = toRedisBytes(bits);
+        byte[] tmpKey = (key + ":tmp:" + System.nanoTime()).getBytes(StandardCharsets.UTF_8);
+        //使用BITOP OR合并，不会覆盖其他节点同时写入的位
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.stringCommands().set(tmpKey, local);
+            connection.stringCommands().bitOp(RedisStringCommands.BitOperation.OR, rawKey, rawKey, tmpKey);
+            connection.keyCommands().del(tmpKey);
+            return null;
+        });
+        log.info("布隆过滤器{}加载完成，元素{}个，位数{}，哈希函数{}个", key, ids.size(), numBits, numHashes);
+    }
+
+    /**
+     * 用当前有效的元素重建位图，覆盖redis中的副本并通知所有节点重新加载
+     * 覆盖redis期间其他节点写入的位可能丢失，因此覆盖后再读取一次元素补写，
+     * 写入方需要先把元素保存到source的数据源，再调用put
+     * @param source 当前有效的全部元素
+     */
+    public void rebuild(Supplier<Collection<Long>> source) {
+        AtomicLongArray rebuilt = new AtomicLongArray(bits.length());
+        Collection<Long> ids = source.get();
+        for (Long id : ids) {
+            putLocal(rebuilt, id);
+        }
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] rawChannel = channel.getBytes(StandardCharsets.UTF_8);
+        byte[] tmpKey = (key + ":tmp:" + System.nanoTime()).getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.stringCommands().set(rawKey, toRedisBytes(rebuilt)));
+        //补写覆盖前已保存到数据源的元素
+        for (Long id : source.get()) {
+            putLocal(rebuilt, id);
+        }
+        byte[] local = toRedisBytes(rebuilt);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.stringCommands().set(tmpKey, local);
+            connection.stringCommands().bitOp(RedisStringCommands.BitOperation.OR, rawKey, rawKey, tmpKey);
+            connection.keyCommands().del(tmpKey);
+            connection.publish(rawChannel, REBUILD_MESSAGE.getBytes(StandardCharsets.UTF_8));
+            return null;
+        });
+        log.info("布隆过滤器{}重建完成，元素{}个", key, ids.size());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (REBUILD_MESSAGE.equals(body)) {
+            reload();
+            return;
+        }
+        putLocal(Long.parseLong(body));
+    }
+
+    //从redis加载位图后整体替换本地位图，替换前写入的id已在redis中，替换后收到的通知会再次写入
+    private synchronized void reload() {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] remote = stringRedisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(rawKey));
+        AtomicLongArray reloaded = new AtomicLongArray(bits.length());
+        if (remote != null) {
+            fromRedisBytes(reloaded, remote);
+        }
+        bits = reloaded;
+    }
+
+    private synchronized void putLocal(long id) {
+        putLocal(bits, id);
+    }
+
+    private void putLocal(AtomicLongArray bits, long id) {
+        long hash = mix64(id);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            setBit(bits, index(h1, h2, i));
+        }
+    }
+
+    private void fromRedisBytes(AtomicLongArray bits, byte[] remote) {
+        long limit = Math.min(remote.length, numBits >>> 3);
+        for (int i = 0; i < limit; i++) {
+            if (remote[i] == 0) {
+                continue;
+            }
+            for (int j = 0; j < 8; j++) {
+                if ((remote[i] & (0x80 >>> j)) != 0) {
+                    setBit(bits, ((long) i << 3) + j);
+                }
+            }
+        }
+    }
+
+    private static void setBit(AtomicLongArray bits, long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long old;
+        do {
+            old = bits.get(word);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(word, old, old | mask));
+    }
+
+    //redis位图中第0位是首字节的最高位
+    private byte[] toRedisBytes(AtomicLongArray bits) {
+        byte[] bytes = new byte[(int) (numBits >>> 3)];
+        for (int word = 0; word < bits.length(); word++) {
+            long value = bits.get(word);
+            while (value != 0) {
+                int bit = Long.numberOfTrailingZeros(value);
+                long index = ((long) word << 6) + bit;
+                bytes[(int) (index >>> 3)] |= (byte) (0x80 >>> (index & 7));
+                value &= value - 1;
+            }
+        }
+        return bytes;
+    }
+
+    private long index(int h1, int h2, int i) {
+        long combined = h1 + (long) i * h2;
+        if (combined < 0) {
+            combined = ~combined;
+        }
+        return combined % numBits;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -5,20 +5,59 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 36000L;
+    public static final String LOGIN_INVALIDATE_CHANNEL = "login:invalidate";
+    public static final String LOGIN_SIGN_KEYS = "login:sign:keys";
+    public static final String LOGIN_SIGN_CURRENT = "login:sign:current";
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
+    public static final String LOCK_SIGN_ROTATE = "lock:sign:rotate";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    public static final Long CACHE_SHOP_LOCAL_TTL = 10L;
+    public static final Long CACHE_SHOP_LOCAL_SIZE = 10000L;
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    public static final String BLOOM_KEY = "bloom:";
+    public static final String BLOOM_CHANNEL = "bloom:add:";
+
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shopType";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_CHANNEL = "lock:channel:";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
-    public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_SHARDS_KEY = "seckill:shards:";
+    public static final String SECKILL_SHARDED_KEY = "seckill:sharded";
+    public static final String SECKILL_PENDING_KEY = "seckill:pending:";
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_DLQ = "stream.orders.dlq";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
+    public static final String SECKILL_STOCK_EPOCH_KEY = "seckill:epoch:";
+    public static final String ID_WORKER_KEY = "id:worker:";
+    public static final String ORDER_CONSUMER_KEY = "order:consumers";
+    public static final String ORDER_PARTITION_LEASE_KEY = "order:partition:lease:";
+    public static final String BLOG_LIKED_KEY = "blog:like:";
+    public static final String BLOG_LIKE_DELTA_KEY = "blog:like-delta";
+    public static final String BLOG_LIKE_FLUSHING_KEY = "blog:like-delta:flushing";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String BLOG_HOT_REBUILDING_KEY = "blog:hot:rebuilding";
+    public static final String FOLLOWS_KEY = "follows:";
+    public static final String FOLLOWERS_KEY = "followers:";
+    public static final String FOLLOW_COUNT_KEY = "follow:count:";
+    public static final String FOLLOW_SYNCED_KEY = "follow:synced";
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_OUTBOX_KEY = "feed:outbox:";
+    public static final String FEED_CELEBRITY_KEY = "feed:celebrities";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_GEO_CHANNEL = "shop:geo:update";
     public static final String USER_SIGN_KEY = "sign:";
 }
@@ -1,14 +1,41 @@
 package com.hmdp.utils;
 
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+
+/**
+ * 全局id生成器，高32位为秒级时间戳，低32位为当天的序列号
+ * redis模式每次生成都执行一次INCR；segment模式每次INCRBY预留一段序列号，在本地分配，剩余不足时异步预取下一段
+ * snowflake模式完全在本地生成，低32位依次为秒内毫秒数(10位)、机器id(10位)、毫秒内序列号(12位)，机器id从redis租用
+ */
+@Slf4j
 @Component
 public class RedisIdWorker {
 
@@ -18,18 +45,285 @@ public class RedisIdWorker {
     private static final long BEGIN_TIMESTAMP = 1735689600L;
     //时间戳位数
     private static final int COUNT_BITS=32;
+    private static final long SECONDS_PER_DAY = 86400L;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final int WORKER_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final DefaultRedisScript<Long> LEASE_SCRIPT;
+
+    static {
+        LEASE_SCRIPT = new DefaultRedisScript<>();
+        LEASE_SCRIPT.setLocation(new ClassPathResource("lease.lua"));
+        LEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    //生成方式：redis、segment或snowflake
+    @Value("${hmdp.id.mode:redis}")
+    private String mode;
+    //每次预留的序列号数量
+    @Value("${hmdp.id.segment.size:1000}")
+    private long segmentSize;
+    //当前号段剩余比例低于该值时预取下一段
+    @Value("${hmdp.id.segment.prefetch-ratio:0.2}")
+    private double prefetchRatio;
+
+    //机器id租约时长，心跳间隔需小于该值
+    @Value("${hmdp.id.worker.lease-millis:30000}")
+    private long workerLeaseMillis;
+    @Value("${hmdp.id.worker.heartbeat-millis:10000}")
+    private long heartbeatMillis;
+    //时钟回拨不超过该值时沿用上次的时间戳继续分配
+    @Value("${hmdp.id.clock.max-borrow-millis:5}")
+    private long maxBorrowMillis;
+    //时钟回拨不超过该值时等待时钟追上，超过则拒绝生成
+    @Value("${hmdp.id.clock.max-wait-millis:1000}")
+    private long maxWaitMillis;
+
+    private final String instanceId = UUID.randomUUID().toString(true);
+    private volatile long workerId = -1;
+    //租约到期时间，到期前未续约成功则停止生成，避免与接管该机器id的节点重复
+    private volatile long workerLeaseExpireAt;
+    //上次生成的毫秒时间戳 << SEQUENCE_BITS | 序列号
+    private final AtomicLong lastState = new AtomicLong();
+
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("id-segment-", true));
+    //续约使用独立线程，不受其他定时任务耗时的影响，否则租约可能在排队期间过期
+    private final ScheduledExecutorService heartbeatExecutor =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("id-worker-heartbeat-", true));
+
+    @PostConstruct
+    public void init() {
+        if (isSnowflake()) {
+            acquireWorkerId();
+            heartbeatExecutor.scheduleWithFixedDelay(this::renewWorkerId, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
     public long nextId(String KEY_PREFIX){
-        //生成时间戳
-        LocalDateTime now = LocalDateTime.now();
-        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
+        if (isSnowflake()) {
+            return nextSnowflakeId();
+        }
+        //生成时间戳，与LocalDateTime.now().toEpochSecond(ZoneOffset.UTC)一致
+        long nowMillis = System.currentTimeMillis();
+        long nowSecond = nowMillis / 1000 + ZONE.getRules().getOffset(Instant.ofEpochMilli(nowMillis)).getTotalSeconds();
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
 
-        //生成序列号
-        String date = now.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + KEY_PREFIX + ":" + date);
+        //生成序列号，序列号按天重置
+        long day = nowSecond / SECONDS_PER_DAY;
+        long count;
+        if ("segment".equalsIgnoreCase(mode)) {
+            SegmentBuffer buffer = buffers.get(KEY_PREFIX);
+            if (buffer == null) {
+                buffer = buffers.computeIfAbsent(KEY_PREFIX, SegmentBuffer::new);
+            }
+            count = buffer.nextSequence(day);
+        } else {
+            count = stringRedisTemplate.opsForValue().increment(counterKey(KEY_PREFIX, day));
+        }
 
         //拼接
         return timestamp<<COUNT_BITS | count;
     }
 
+    //续约机器id，租约丢失时重新申请；异常不抛出，避免后续心跳被取消
+    public void renewWorkerId() {
+        try {
+            long now = System.currentTimeMillis();
+            if (workerId >= 0 && lease(workerKey(workerId), true)) {
+                workerLeaseExpireAt = now + workerLeaseMillis;
+                return;
+            }
+            log.warn("机器id{}的租约已失效，重新申请", workerId);
+            acquireWorkerId();
+        } catch (Exception e) {
+            log.error("续约机器id失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        heartbeatExecutor.shutdownNow();
+        prefetchExecutor.shutdownNow();
+        if (workerId >= 0) {
+            lease(workerKey(workerId), false);
+        }
+    }
+
+    private boolean isSnowflake() {
+        return "snowflake".equalsIgnoreCase(mode);
+    }
+
+    private long nextSnowflakeId() {
+        if (System.currentTimeMillis() >= workerLeaseExpireAt) {
+            throw new IllegalStateException("机器id租约已失效");
+        }
+        while (true) {
+            long now = localMillis();
+            long last = lastState.get();
+            long lastMillis = last >>> SEQUENCE_BITS;
+            long millis;
+            long sequence;
+            if (now > lastMillis) {
+                millis = now;
+                sequence = 0;
+            } else if (lastMillis - now <= maxBorrowMillis) {
+                //同一毫秒或小幅回拨，沿用上次的时间戳，序列号用完时借用下一毫秒
+                millis = lastMillis;
+                sequence = (last & MAX_SEQUENCE) + 1;
+                if (sequence > MAX_SEQUENCE) {
+                    millis++;
+                    sequence = 0;
+                }
+            } else {
+                //回拨较大时等待时钟追上
+                long backward = lastMillis - now;
+                if (backward > maxWaitMillis) {
+                    throw new IllegalStateException("时钟回拨" + backward + "毫秒，拒绝生成id");
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backward - maxBorrowMillis));
+                continue;
+            }
+            if (lastState.compareAndSet(last, millis << SEQUENCE_BITS | sequence)) {
+                long timestamp = millis / 1000 - BEGIN_TIMESTAMP;
+                long count = (millis % 1000) << (WORKER_BITS + SEQUENCE_BITS) | workerId << SEQUENCE_BITS | sequence;
+                return timestamp << COUNT_BITS | count;
+            }
+        }
+    }
+
+    //与nextId的秒级时间戳同一时区
+    private static long localMillis() {
+        long nowMillis = System.currentTimeMillis();
+        return nowMillis + ZONE.getRules().getOffset(Instant.ofEpochMilli(nowMillis)).getTotalSeconds() * 1000L;
+    }
+
+    //从随机位置开始查找空闲的机器id
+    private synchronized void acquireWorkerId() {
+        long start = ThreadLocalRandom.current().nextLong(MAX_WORKER_ID + 1);
+        for (long i = 0; i <= MAX_WORKER_ID; i++) {
+            long id = (start + i) & MAX_WORKER_ID;
+            long now = System.currentTimeMillis();
+            if (lease(workerKey(id), true)) {
+                workerId = id;
+                workerLeaseExpireAt = now + workerLeaseMillis;
+                log.info("已租用机器id：{}", id);
+                return;
+            }
+        }
+        throw new IllegalStateException("没有可用的机器id");
+    }
+
+    private boolean lease(String key, boolean acquire) {
+        Long result = stringRedisTemplate.execute(
+                LEASE_SCRIPT,
+                Collections.singletonList(key),
+                instanceId, String.valueOf(workerLeaseMillis), acquire ? "1" : "0"
+        );
+        return result != null && result == 1;
+    }
+
+    private static String workerKey(long workerId) {
+        return ID_WORKER_KEY + workerId;
+    }
+
+    private static String counterKey(String keyPrefix, long day) {
+        return "icr:" + keyPrefix + ":" + LocalDate.ofEpochDay(day).format(DATE_FORMATTER);
+    }
+
+    //一段连续的序列号[cursor, max]
+    private static class Segment {
+        private final long day;
+        private final AtomicLong cursor;
+        private final long max;
+        //分配到该序列号时触发预取
+        private final long prefetchAt;
+
+        private Segment(long day, long min, long max, long prefetchAt) {
+            this.day = day;
+            this.cursor = new AtomicLong(min);
+            this.max = max;
+            this.prefetchAt = prefetchAt;
+        }
+    }
+
+    //单个业务前缀的双缓冲号段
+    private class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private volatile Segment next;
+        private final AtomicBoolean loading = new AtomicBoolean();
+
+        private SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        private long nextSequence(long day) {
+            while (true) {
+                Segment segment = current;
+                if (segment != null && segment.day == day) {
+                    long value = segment.cursor.getAndIncrement();
+                    if (value <= segment.max) {
+                        if (value == segment.prefetchAt) {
+                            prefetch(day);
+                        }
+                        return value;
+                    }
+                }
+                //号段用完或日期变化，切换到下一段
+                switchSegment(segment, day);
+            }
+        }
+
+        private synchronized void switchSegment(Segment exhausted, long day) {
+            if (current != exhausted) {
+                //其他线程已完成切换
+                return;
+            }
+            Segment segment = next;
+            next = null;
+            if (segment == null || segment.day != day) {
+                //预取未完成或已跨天，同步获取
+                segment = loadSegment(day);
+            }
+            current = segment;
+        }
+
+        private void prefetch(long day) {
+            if (next != null || !loading.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                prefetchExecutor.execute(() -> {
+                    try {
+                        Segment segment = loadSegment(day);
+                        synchronized (this) {
+                            if (next == null) {
+                                next = segment;
+                            }
+                        }
+                    } catch (Exception e) {
+                        log.error("预取号段失败，前缀：{}", keyPrefix, e);
+                    } finally {
+                        loading.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                loading.set(false);
+            }
+        }
+
+        private Segment loadSegment(long day) {
+            Long max = stringRedisTemplate.opsForValue().increment(counterKey(keyPrefix, day), segmentSize);
+            if (max == null) {
+                throw new IllegalStateException("获取号段失败：" + keyPrefix);
+            }
+            long min = max - segmentSize + 1;
+            long prefetchAt = max - (long) (segmentSize * prefetchRatio);
+            return new Segment(day, min, max, Math.max(min, prefetchAt));
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁释放通知
+ * 等待锁的线程在本地阻塞，收到释放通知后唤醒一个线程重试，避免轮询redis
+ */
+@Component
+public class RedisLockSubscriber implements MessageListener {
+    //频道 -> 等待该锁的线程
+    private final Map<String, Waiters> waiters = new ConcurrentHashMap<>();
+
+    public Waiters subscribe(String channel) {
+        return waiters.compute(channel, (key, value) -> {
+            Waiters result = value == null ? new Waiters() : value;
+            result.count++;
+            return result;
+        });
+    }
+
+    public void unsubscribe(String channel) {
+        waiters.computeIfPresent(channel, (key, value) -> --value.count == 0 ? null : value);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Waiters value = waiters.get(new String(message.getChannel(), StandardCharsets.UTF_8));
+        if (value != null) {
+            value.semaphore.release();
+        }
+    }
+
+    public static class Waiters {
+        //只在compute中修改
+        private int count;
+        private final Semaphore semaphore = new Semaphore(0);
+
+        //等待释放通知，超时返回false
+        public boolean await(long millis) throws InterruptedException {
+            return semaphore.tryAcquire(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_EPOCH_KEY;
+
+/**
+ * 秒杀券售罄标记，售罄后本节点直接拒绝请求，不再生成订单id和执行lua脚本
+ * 标记通过发布订阅同步到所有节点，补充库存时清除
+ * 标记带有效期，即使清除通知丢失，过期后也会重新到redis确认一次
+ * 每次补充库存在redis中递增库存版本，售罄标记带上扣减前的版本，补充库存之前的售罄标记不再生效
+ */
+@Component
+public class SeckillSoldOutCache implements MessageListener {
+    private static final String SOLD_OUT = "1";
+    private static final String RESET = "0";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final long ttlMillis;
+    //voucherId -> 标记过期时间
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+    //voucherId -> 本节点已知的库存版本
+    private final Map<Long, Long> epochs = new ConcurrentHashMap<>();
+
+    public SeckillSoldOutCache(StringRedisTemplate stringRedisTemplate,
+                               @Value("${hmdp.seckill.sold-out-ttl-seconds:60}") long ttlSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    }
+
+    public boolean isSoldOut(Long voucherId) {
+        Long expireAt = soldOut.get(voucherId);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt < System.currentTimeMillis()) {
+            soldOut.remove(voucherId, expireAt);
+            return false;
+        }
+        return true;
+    }
+
+    //当前库存版本，扣减库存前获取，售罄时随标记一起发布
+    public long epoch(Long voucherId) {
+        Long epoch = epochs.get(voucherId);
+        if (epoch != null) {
+            return epoch;
+        }
+        String value = stringRedisTemplate.opsForValue().get(SECKILL_STOCK_EPOCH_KEY + voucherId);
+        return updateEpoch(voucherId, value == null ? 0L : Long.parseLong(value));
+    }
+
+    //标记售罄并通知其他节点，已标记或期间已补充过库存时不发布
+    public void markSoldOut(Long voucherId, long epoch) {
+        if (isSoldOut(voucherId) || !mark(voucherId, epoch)) {
+            return;
+        }
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId + ":" + SOLD_OUT + ":" + epoch);
+    }
+
+    //补充库存后递增库存版本，清除所有节点的标记
+    public void reset(Long voucherId) {
+        Long epoch = stringRedisTemplate.opsForValue().increment(SECKILL_STOCK_EPOCH_KEY + voucherId);
+        clear(voucherId, epoch == null ? 0L : epoch);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId + ":" + RESET + ":" + epoch);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":");
+        Long voucherId = Long.valueOf(parts[0]);
+        long epoch = Long.parseLong(parts[2]);
+        if (SOLD_OUT.equals(parts[1])) {
+            mark(voucherId, epoch);
+        } else {
+            clear(voucherId, epoch);
+        }
+    }
+
+    //标记的版本早于已知版本时忽略，说明售罄之后已经补充过库存
+    private boolean mark(Long voucherId, long epoch) {
+        if (epoch < epoch(voucherId)) {
+            return false;
+        }
+        updateEpoch(voucherId, epoch);
+        soldOut.put(voucherId, System.currentTimeMillis() + ttlMillis);
+        return true;
+    }
+
+    private void clear(Long voucherId, long epoch) {
+        updateEpoch(voucherId, epoch);
+        soldOut.remove(voucherId);
+    }
+
+    private long updateEpoch(Long voucherId, long epoch) {
+        return epochs.merge(voucherId, epoch, Math::max);
+    }
+}
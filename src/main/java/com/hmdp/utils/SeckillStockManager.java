@@ -0,0 +1,260 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀库存
+ * 分片数为1时使用单个库存key；大于1时库存拆分到多个分片，每个分片通过hash tag落在不同的slot，
+ * 用户按id哈希到固定分片，一人一单集合也按用户分片，本分片库存不足时依次尝试其他分片
+ * 分片模式下订单队列与库存不在同一slot，扣减库存时在同一slot内记录待发送订单，发送后删除，
+ * 节点在两步之间宕机时由定时任务补发
+ */
+@Slf4j
+@Component
+public class SeckillStockManager {
+    public static final int SUCCESS = 0;
+    public static final int SOLD_OUT = 1;
+    public static final int DUPLICATE = 2;
+    //用户所属分片库存不足，但已占用下单资格
+    private static final int HOME_EMPTY = 3;
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<Long> SHARD_SECKILL_SCRIPT;
+    private static final DefaultRedisScript<Long> STOCK_DEDUCT_SCRIPT;
+    private static final DefaultRedisScript<Long> CANCEL_SCRIPT;
+
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+        SHARD_SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SHARD_SECKILL_SCRIPT.setLocation(new ClassPathResource("seckillShard.lua"));
+        SHARD_SECKILL_SCRIPT.setResultType(Long.class);
+        STOCK_DEDUCT_SCRIPT = new DefaultRedisScript<>();
+        STOCK_DEDUCT_SCRIPT.setLocation(new ClassPathResource("stockDeduct.lua"));
+        STOCK_DEDUCT_SCRIPT.setResultType(Long.class);
+        CANCEL_SCRIPT = new DefaultRedisScript<>();
+        CANCEL_SCRIPT.setLocation(new ClassPathResource("seckillCancel.lua"));
+        CANCEL_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private OrderStreamPartitioner orderStreamPartitioner;
+
+    @Value("${hmdp.seckill.stock-shards:1}")
+    private int stockShards;
+    //待发送订单超过该时间仍未发送，视为扣减库存后节点宕机，由定时任务补发
+    @Value("${hmdp.seckill.resend-after-ms:30000}")
+    private long resendAfterMillis;
+
+    //voucherId -> 分片数，新增秒杀券时确定，之后不再变化
+    private final Map<Long, Integer> shardCounts = new ConcurrentHashMap<>();
+
+    //保存库存至redis，按当前配置的分片数拆分
+    public void initStock(Long voucherId, int stock) {
+        int shards = Math.max(1, stockShards);
+        if (shards == 1) {
+            stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucherId, String.valueOf(stock));
+        } else {
+            for (int i = 0; i < shards; i++) {
+                int bucketStock = stock / shards + (i < stock % shards ? 1 : 0);
+                stringRedisTemplate.opsForValue().set(stockKey(voucherId, i), String.valueOf(bucketStock));
+            }
+        }
+        stringRedisTemplate.opsForValue().set(SECKILL_SHARDS_KEY + voucherId, String.valueOf(shards));
+        if (shards > 1) {
+            stringRedisTemplate.opsForSet().add(SECKILL_SHARDED_KEY, voucherId.toString());
+        }
+        shardCounts.put(voucherId, shards);
+    }
+
+    //补充库存，分片模式下平均分配到各个分片
+    public void addStock(Long voucherId, int count) {
+        int shards = shardCount(voucherId);
+        if (shards == 1) {
+            stringRedisTemplate.opsForValue().increment(SECKILL_STOCK_KEY + voucherId, count);
+            return;
+        }
+        for (int i = 0; i < shards; i++) {
+            int bucketCount = count / shards + (i < count % shards ? 1 : 0);
+            if (bucketCount > 0) {
+                stringRedisTemplate.opsForValue().increment(stockKey(voucherId, i), bucketCount);
+            }
+        }
+    }
+
+    /**
+     * 扣减库存、校验一人一单并发送订单消息
+     * @return SUCCESS、SOLD_OUT或DUPLICATE
+     */
+    public int seckill(Long voucherId, Long userId, long orderId) {
+        int shards = shardCount(voucherId);
+        if (shards == 1) {
+            Long result = stringRedisTemplate.execute(
+                    SECKILL_SCRIPT,
+                    Collections.emptyList(),
+                    voucherId.toString(), userId.toString(), String.valueOf(orderId),
+                    orderStreamPartitioner.streamOf(voucherId)
+            );
+            return result == null ? SOLD_OUT : result.intValue();
+        }
+        int home = Math.floorMod(Long.hashCode(userId) * 0x9E3779B9, shards);
+        String orderKey = orderKey(voucherId, home);
+        String pendingOrder = orderId + ":" + userId;
+        String now = String.valueOf(System.currentTimeMillis());
+        Long result = stringRedisTemplate.execute(
+                SHARD_SECKILL_SCRIPT,
+                Arrays.asList(stockKey(voucherId, home), orderKey, pendingKey(voucherId, home)),
+                userId.toString(), pendingOrder, now
+        );
+        int code = result == null ? SOLD_OUT : result.intValue();
+        if (code == DUPLICATE) {
+            return DUPLICATE;
+        }
+        int deducted = code == SUCCESS ? home : -1;
+        //本分片库存不足，依次尝试其他分片
+        for (int i = 1; deducted < 0 && i < shards; i++) {
+            int bucket = (home + i) % shards;
+            Long deduct = stringRedisTemplate.execute(
+                    STOCK_DEDUCT_SCRIPT,
+                    Arrays.asList(stockKey(voucherId, bucket), pendingKey(voucherId, bucket)),
+                    pendingOrder, now
+            );
+            if (deduct != null && deduct == SUCCESS) {
+                deducted = bucket;
+            }
+        }
+        if (deducted < 0) {
+            //全部分片已售罄，释放下单资格
+            stringRedisTemplate.opsForSet().remove(orderKey, userId.toString());
+            return SOLD_OUT;
+        }
+        String pendingKey = pendingKey(voucherId, deducted);
+        try {
+            sendOrder(voucherId, userId, orderId);
+        } catch (RuntimeException e) {
+            //发送失败则归还库存和下单资格；待发送记录已被补发任务处理时不再归还
+            Long removed = stringRedisTemplate.opsForZSet().remove(pendingKey, pendingOrder);
+            if (removed != null && removed > 0) {
+                stringRedisTemplate.opsForValue().increment(stockKey(voucherId, deducted));
+                stringRedisTemplate.opsForSet().remove(orderKey, userId.toString());
+            }
+            throw e;
+        }
+        stringRedisTemplate.opsForZSet().remove(pendingKey, pendingOrder);
+        return SUCCESS;
+    }
+
+    /**
+     * 补发分片模式下已扣减库存但未发送的订单消息
+     * 重复发送的订单在消费时按一人一单过滤
+     */
+    @Scheduled(fixedDelayString = "${hmdp.seckill.resend-interval-ms:10000}")
+    public void resendPendingOrders() {
+        Set<String> vouchers = stringRedisTemplate.opsForSet().members(SECKILL_SHARDED_KEY);
+        if (vouchers == null || vouchers.isEmpty()) {
+            return;
+        }
+        ILock lock = new SimpleRedisLock("seckill:resend", stringRedisTemplate);
+        if (!lock.tryLock(60)) {
+            return;
+        }
+        try {
+            long before = System.currentTimeMillis() - resendAfterMillis;
+            for (String voucher : vouchers) {
+                Long voucherId = Long.valueOf(voucher);
+                int shards = shardCount(voucherId);
+                for (int i = 0; i < shards; i++) {
+                    String pendingKey = pendingKey(voucherId, i);
+                    Set<String> orders = stringRedisTemplate.opsForZSet().rangeByScore(pendingKey, 0, before);
+                    if (orders == null) {
+                        continue;
+                    }
+                    for (String order : orders) {
+                        String[] parts = order.split(":");
+                        log.warn("补发未发送的秒杀订单，voucherId={}, orderId={}, userId={}", voucherId, parts[0], parts[1]);
+                        sendOrder(voucherId, Long.valueOf(parts[1]), Long.parseLong(parts[0]));
+                        stringRedisTemplate.opsForZSet().remove(pendingKey, order);
+                    }
+                }
+            }
+        } finally {
+            lock.unLock();
+        }
+    }
+
+    private void sendOrder(Long voucherId, Long userId, long orderId) {
+        Map<String, String> order = new HashMap<>();
+        order.put("userId", userId.toString());
+        order.put("voucherId", voucherId.toString());
+        order.put("id", String.valueOf(orderId));
+        stringRedisTemplate.opsForStream().add(StreamRecords.mapBacked(order).withStreamKey(orderStreamPartitioner.streamOf(voucherId)));
+    }
+
+    /**
+     * 订单最终未创建时撤销：释放用户的下单资格，并把库存归还到用户所属分片
+     * @return 用户占用了下单资格并已归还库存时返回true
+     */
+    public boolean cancelOrder(Long voucherId, Long userId) {
+        int shards = shardCount(voucherId);
+        List<String> keys;
+        if (shards == 1) {
+            keys = Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId);
+        } else {
+            int home = Math.floorMod(Long.hashCode(userId) * 0x9E3779B9, shards);
+            keys = Arrays.asList(stockKey(voucherId, home), orderKey(voucherId, home));
+        }
+        Long result = stringRedisTemplate.execute(CANCEL_SCRIPT, keys, userId.toString());
+        return result != null && result == 1;
+    }
+
+    private int shardCount(Long voucherId) {
+        Integer shards = shardCounts.get(voucherId);
+        if (shards != null) {
+            return shards;
+        }
+        String value = stringRedisTemplate.opsForValue().get(SECKILL_SHARDS_KEY + voucherId);
+        if (value == null) {
+            //分片前创建的秒杀券，按单个库存处理
+            return 1;
+        }
+        shards = Integer.valueOf(value);
+        shardCounts.put(voucherId, shards);
+        return shards;
+    }
+
+    //{voucherId:分片}作为hash tag，同一分片的库存和用户集合位于同一slot
+    private static String stockKey(Long voucherId, int shard) {
+        return SECKILL_STOCK_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    private static String orderKey(Long voucherId, int shard) {
+        return SECKILL_ORDER_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    //分片内已扣减库存、订单消息尚未发送的订单，member为orderId:userId，score为扣减时间
+    private static String pendingKey(Long voucherId, int shard) {
+        return SECKILL_PENDING_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+}
@@ -0,0 +1,274 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_CHANNEL;
+
+/**
+ * 店铺坐标的本地网格索引，附近商铺查询不访问redis
+ * 每个类型一张网格，按经纬度划分为固定大小的格子，格子内用基本类型数组保存店铺id和坐标；
+ * 查询只扫描半径覆盖的格子，距离公式与redis GEO相同。店铺新增或修改时通过发布订阅同步到所有节点
+ */
+@Component
+public class ShopGeoIndex implements MessageListener {
+    //与redis GEO相同的地球半径，距离结果与GEOSEARCH一致
+    private static final double EARTH_RADIUS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final double cellDegrees;
+    //typeId -> 网格
+    private final Map<Long, Grid> grids = new ConcurrentHashMap<>();
+    //shopId -> 当前所在的类型和坐标，更新时用于从原来的格子中移除
+    private final Map<Long, Location> locations = new ConcurrentHashMap<>();
+
+    public ShopGeoIndex(StringRedisTemplate stringRedisTemplate,
+                        @Value("${hmdp.shop.geo.mode:redis}") String mode,
+                        @Value("${hmdp.shop.geo.local.cell-degrees:0.01}") double cellDegrees) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = "local".equalsIgnoreCase(mode);
+        this.cellDegrees = cellDegrees;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //只更新本节点
+    public synchronized void put(Long shopId, Long typeId, double x, double y) {
+        Location old = locations.get(shopId);
+        if (old != null) {
+            Grid grid = grids.get(old.typeId);
+            if (grid != null) {
+                grid.remove(shopId, old.x, old.y);
+            }
+        }
+        grids.computeIfAbsent(typeId, key -> new Grid()).add(shopId, x, y);
+        locations.put(shopId, new Location(typeId, x, y));
+    }
+
+    //更新本节点并通知其他节点，在事务中修改店铺时应在事务提交后调用，避免回滚后其他节点已收到新坐标
+    public void update(Long shopId, Long typeId, double x, double y) {
+        put(shopId, typeId, x, y);
+        stringRedisTemplate.convertAndSend(SHOP_GEO_CHANNEL, shopId + "," + typeId + "," + x + "," + y);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (!enabled) {
+            return;
+        }
+        String[] fields = new String(message.getBody(), StandardCharsets.UTF_8).split(",");
+        put(Long.valueOf(fields[0]), Long.valueOf(fields[1]), Double.parseDouble(fields[2]), Double.parseDouble(fields[3]));
+    }
+
+    /**
+     * 查询半径内的店铺
+     * @param limit 最多返回的数量
+     * @return 按距离由近到远排序
+     */
+    public List<Neighbor> search(Long typeId, double x, double y, double radiusMeters, int limit) {
+        return search(typeId, x, y, radiusMeters, -1, 0, limit);
+    }
+
+    /**
+     * 查询半径内按(距离, 店铺id)排在游标之后的店铺
+     * @param afterDistance 上一页最后一家店铺的距离，第一页传-1
+     * @param afterShopId 上一页最后一家店铺的id
+     * @param limit 最多返回的数量
+     * @return 按距离由近到远排序，距离相同时按店铺id升序
+     */
+    public List<Neighbor> search(Long typeId, double x, double y, double radiusMeters,
+                                 double afterDistance, long afterShopId, int limit) {
+        Grid grid = grids.get(typeId);
+        if (grid == null) {
+            return new ArrayList<>();
+        }
+        //半径覆盖的经纬度范围，经度方向的跨度随纬度增大
+        double dy = radiusMeters / METERS_PER_DEGREE;
+        double dx = Math.min(dy / Math.max(Math.cos(Math.toRadians(y)), 1e-6), 180);
+        long minCx = cell(x - dx), maxCx = cell(x + dx);
+        long minCy = cell(y - dy), maxCy = cell(y + dy);
+        List<Neighbor> result = new ArrayList<>();
+        Collection<Cell> cells;
+        if ((maxCx - minCx + 1) * (maxCy - minCy + 1) > grid.cells.size()) {
+            //覆盖的格子比已有的格子多时直接遍历已有的格子
+            cells = grid.cells.values();
+        } else {
+            cells = new ArrayList<>();
+            for (long cx = minCx; cx <= maxCx; cx++) {
+                for (long cy = minCy; cy <= maxCy; cy++) {
+                    Cell cell = grid.cells.get(cellKey(cx, cy));
+                    if (cell != null) {
+                        cells.add(cell);
+                    }
+                }
+            }
+        }
+        for (Cell cell : cells) {
+            for (int i = 0; i < cell.ids.length; i++) {
+                double distance = distance(x, y, cell.xs[i], cell.ys[i]);
+                if (distance <= radiusMeters && Neighbor.isAfter(distance, cell.ids[i], afterDistance, afterShopId)) {
+                    result.add(new Neighbor(cell.ids[i], distance));
+                }
+            }
+        }
+        result.sort(Neighbor.ORDER);
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * 查询最近的k家店铺，从一个格子大小的半径开始逐步扩大，直到找到k家或超过最大半径
+     * 半径内的店铺都比半径外的近，因此找到k家时即为最近的k家
+     */
+    public List<Neighbor> nearest(Long typeId, double x, double y, int k, double maxRadiusMeters) {
+        double radius = Math.min(cellDegrees * METERS_PER_DEGREE, maxRadiusMeters);
+        while (true) {
+            List<Neighbor> result = search(typeId, x, y, radius, k);
+            if (result.size() >= k || radius >= maxRadiusMeters) {
+                return result;
+            }
+            radius = Math.min(radius * 2, maxRadiusMeters);
+        }
+    }
+
+    private long cell(double degrees) {
+        return (long) Math.floor(degrees / cellDegrees);
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return cx << 32 | (cy & 0xffffffffL);
+    }
+
+    //haversine公式，与redis的geohashGetDistance相同
+    private static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1);
+        double lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    public static class Neighbor {
+        //按距离升序，距离相同时按店铺id升序，与分页游标的顺序一致
+        public static final Comparator<Neighbor> ORDER =
+                Comparator.comparingDouble(Neighbor::getDistance).thenComparingLong(Neighbor::getShopId);
+
+        private final long shopId;
+        private final double distance;
+
+        public Neighbor(long shopId, double distance) {
+            this.shopId = shopId;
+            this.distance = distance;
+        }
+
+        //是否排在游标(afterDistance, afterShopId)之后
+        public boolean isAfter(double afterDistance, long afterShopId) {
+            return isAfter(distance, shopId, afterDistance, afterShopId);
+        }
+
+        private static boolean isAfter(double distance, long shopId, double afterDistance, long afterShopId) {
+            return distance > afterDistance || distance == afterDistance && shopId > afterShopId;
+        }
+
+        public long getShopId() {
+            return shopId;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    private static class Location {
+        private final long typeId;
+        private final double x;
+        private final double y;
+
+        private Location(long typeId, double x, double y) {
+            this.typeId = typeId;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    //单个类型的网格，修改时替换格子，查询不加锁
+    private class Grid {
+        private final Map<Long, Cell> cells = new ConcurrentHashMap<>();
+
+        private void add(long shopId, double x, double y) {
+            cells.compute(cellKey(cell(x), cell(y)), (key, cell) -> cell == null
+                    ? new Cell(new long[]{shopId}, new double[]{x}, new double[]{y})
+                    : cell.with(shopId, x, y));
+        }
+
+        private void remove(long shopId, double x, double y) {
+            cells.computeIfPresent(cellKey(cell(x), cell(y)), (key, cell) -> cell.without(shopId));
+        }
+    }
+
+    //格子内的店铺，数组不可变
+    private static class Cell {
+        private final long[] ids;
+        private final double[] xs;
+        private final double[] ys;
+
+        private Cell(long[] ids, double[] xs, double[] ys) {
+            this.ids = ids;
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        private Cell with(long shopId, double x, double y) {
+            int n = ids.length;
+            long[] newIds = Arrays.copyOf(ids, n + 1);
+            double[] newXs = Arrays.copyOf(xs, n + 1);
+            double[] newYs = Arrays.copyOf(ys, n + 1);
+            newIds[n] = shopId;
+            newXs[n] = x;
+            newYs[n] = y;
+            return new Cell(newIds, newXs, newYs);
+        }
+
+        //格子为空时返回null，从网格中删除
+        private Cell without(long shopId) {
+            int index = -1;
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == shopId) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return this;
+            }
+            if (ids.length == 1) {
+                return null;
+            }
+            long[] newIds = new long[ids.length - 1];
+            double[] newXs = new double[ids.length - 1];
+            double[] newYs = new double[ids.length - 1];
+            System.arraycopy(ids, 0, newIds, 0, index);
+            System.arraycopy(xs, 0, newXs, 0, index);
+            System.arraycopy(ys, 0, newYs, 0, index);
+            System.arraycopy(ids, index + 1, newIds, index, ids.length - index - 1);
+            System.arraycopy(xs, index + 1, newXs, index, ids.length - index - 1);
+            System.arraycopy(ys, index + 1, newYs, index, ids.length - index - 1);
+            return new Cell(newIds, newXs, newYs);
+        }
+    }
+}
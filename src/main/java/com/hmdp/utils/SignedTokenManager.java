@@ -0,0 +1,281 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 无状态登录token：token本身携带用户信息，使用轮换的密钥做HMAC签名，本地即可校验
+ * redis中只保存密钥和已注销token的jti，注销集合在本地通过布隆过滤器过滤
+ * 格式：kid.payload.signature
+ */
+@Slf4j
+@Component
+public class SignedTokenManager {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    //遇到未知kid时从redis重新加载密钥的最小间隔，防止伪造的kid让每个请求都访问redis
+    private static final long KEY_RELOAD_INTERVAL_MILLIS = 5000L;
+    //轮换锁的有效期，等待其他节点轮换时最多等待这么久
+    private static final long ROTATE_LOCK_SECONDS = 10L;
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisBloomFilter revokedTokenBloomFilter;
+
+    @Value("${hmdp.auth.mode:redis}")
+    private String mode;
+    @Value("${hmdp.auth.key-rotation-hours:24}")
+    private long keyRotationHours;
+
+    //kid -> 密钥，kid为密钥生成时的秒级时间戳
+    private volatile Map<String, SecretKeySpec> keys = Collections.emptyMap();
+    private volatile String currentKid;
+    //上次因未知kid重新加载密钥的时间
+    private final AtomicLong lastReloadMillis = new AtomicLong();
+
+    public boolean isEnabled() {
+        return "signed".equalsIgnoreCase(mode);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        refreshKeys();
+        if (currentKid == null) {
+            throw new IllegalStateException("登录签名密钥加载失败");
+        }
+        //加载未过期的注销记录
+        revokedTokenBloomFilter.init(loadRevokedJtis());
+    }
+
+    //签发token
+    public String issue(UserDTO user) {
+        JSONObject payload = new JSONObject();
+        payload.set("id", user.getId());
+        payload.set("nickName", user.getNickName());
+        payload.set("icon", user.getIcon());
+        payload.set("jti", ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+        payload.set("exp", System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL));
+        String kid = currentKid;
+        SecretKeySpec key = kid == null ? null : keys.get(kid);
+        if (key == null) {
+            //其他节点正在轮换时本节点可能还没有密钥，重新加载一次
+            loadKeys();
+            kid = currentKid;
+            key = kid == null ? null : keys.get(kid);
+            if (key == null) {
+                throw new IllegalStateException("登录签名密钥未就绪");
+            }
+        }
+        String content = kid + "." + ENCODER.encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8));
+        return content + "." + ENCODER.encodeToString(sign(key, content));
+    }
+
+    //校验token，无效、过期或已注销时返回null
+    public UserDTO verify(String token) {
+        JSONObject payload = parse(token);
+        if (payload == null) {
+            return null;
+        }
+        //只有布隆过滤器命中时才查询redis
+        long jti = payload.getLong("jti");
+        if (revokedTokenBloomFilter.mightContain(jti)
+                && stringRedisTemplate.opsForZSet().score(LOGIN_REVOKED_KEY, String.valueOf(jti)) != null) {
+            return null;
+        }
+        UserDTO user = new UserDTO();
+        user.setId(payload.getLong("id"));
+        user.setNickName(payload.getStr("nickName"));
+        user.setIcon(payload.getStr("icon"));
+        return user;
+    }
+
+    //注销token，记录保留到token过期为止
+    public void revoke(String token) {
+        JSONObject payload = parse(token);
+        if (payload == null) {
+            return;
+        }
+        long jti = payload.getLong("jti");
+        stringRedisTemplate.opsForZSet().add(LOGIN_REVOKED_KEY, String.valueOf(jti), payload.getLong("exp"));
+        revokedTokenBloomFilter.put(jti);
+    }
+
+    //定时同步密钥，当前密钥过期时轮换，同时清理已过期的注销记录
+    @Scheduled(fixedDelayString = "${hmdp.auth.key-refresh-interval-ms:60000}", initialDelay = 60000)
+    public void refreshKeys() {
+        if (!isEnabled()) {
+            return;
+        }
+        loadKeys();
+        if (currentKid == null || isRotationDue(currentKid)) {
+            rotateKey();
+        }
+        stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_REVOKED_KEY, 0, System.currentTimeMillis());
+    }
+
+    private JSONObject parse(String token) {
+        String[] parts = StrUtil.splitToArray(token, '.');
+        if (parts.length != 3) {
+            return null;
+        }
+        String kid = parts[0];
+        SecretKeySpec key = keys.get(kid);
+        if (key == null && isNewerKid(kid) && tryAcquireReload()) {
+            //其他节点刚轮换的密钥，限制重新加载的频率，之后仍未知的kid直接拒绝
+            loadKeys();
+            key = keys.get(kid);
+        }
+        if (key == null) {
+            return null;
+        }
+        try {
+            byte[] expected = sign(key, parts[0] + "." + parts[1]);
+            if (!MessageDigest.isEqual(expected, DECODER.decode(parts[2]))) {
+                return null;
+            }
+            JSONObject payload = JSONUtil.parseObj(new String(DECODER.decode(parts[1]), StandardCharsets.UTF_8));
+            if (payload.getLong("exp", 0L) < System.currentTimeMillis()) {
+                return null;
+            }
+            return payload;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    //kid为密钥生成时的秒级时间戳，只有比当前密钥新且不晚于当前时间的kid才可能是刚轮换的密钥
+    private boolean isNewerKid(String kid) {
+        String current = currentKid;
+        if (current == null || !StrUtil.isNumeric(kid) || kid.length() > 19) {
+            return false;
+        }
+        long value = Long.parseLong(kid);
+        return value > Long.parseLong(current) && value <= System.currentTimeMillis() / 1000 + ROTATE_LOCK_SECONDS;
+    }
+
+    private boolean tryAcquireReload() {
+        long now = System.currentTimeMillis();
+        long last = lastReloadMillis.get();
+        return now - last >= KEY_RELOAD_INTERVAL_MILLIS && lastReloadMillis.compareAndSet(last, now);
+    }
+
+    private byte[] sign(SecretKeySpec key, String content) {
+        try {
+            Mac mac = MAC.get();
+            mac.init(key);
+            return mac.doFinal(content.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void loadKeys() {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(LOGIN_SIGN_KEYS);
+        Map<String, SecretKeySpec> loaded = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            byte[] secret = Base64.getDecoder().decode(entry.getValue().toString());
+            loaded.put(entry.getKey().toString(), new SecretKeySpec(secret, ALGORITHM));
+        }
+        keys = loaded;
+        String kid = stringRedisTemplate.opsForValue().get(LOGIN_SIGN_CURRENT);
+        currentKid = kid != null && loaded.containsKey(kid) ? kid : null;
+    }
+
+    private void rotateKey() {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(LOCK_SIGN_ROTATE, "1", ROTATE_LOCK_SECONDS, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            //其他节点正在轮换，本节点还没有可用密钥时等待轮换完成
+            awaitRotation();
+            return;
+        }
+        try {
+            //再次确认，其他节点可能已完成轮换
+            loadKeys();
+            if (currentKid != null && !isRotationDue(currentKid)) {
+                return;
+            }
+            String kid = String.valueOf(System.currentTimeMillis() / 1000);
+            stringRedisTemplate.opsForHash().put(LOGIN_SIGN_KEYS, kid,
+                    Base64.getEncoder().encodeToString(RandomUtil.randomBytes(32)));
+            stringRedisTemplate.opsForValue().set(LOGIN_SIGN_CURRENT, kid);
+            //密钥至少保留到用它签发的最后一个token过期
+            long maxAgeSeconds = TimeUnit.HOURS.toSeconds(keyRotationHours) + TimeUnit.MINUTES.toSeconds(LOGIN_USER_TTL);
+            for (String oldKid : keys.keySet()) {
+                if (Long.parseLong(kid) - Long.parseLong(oldKid) > maxAgeSeconds) {
+                    stringRedisTemplate.opsForHash().delete(LOGIN_SIGN_KEYS, oldKid);
+                }
+            }
+            log.info("登录签名密钥已轮换:{}", kid);
+            loadKeys();
+            //随密钥一起重建注销过滤器，去掉已过期的注销记录，误判率不会一直升高
+            stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_REVOKED_KEY, 0, System.currentTimeMillis());
+            revokedTokenBloomFilter.rebuild(this::loadRevokedJtis);
+        } finally {
+            stringRedisTemplate.delete(LOCK_SIGN_ROTATE);
+        }
+    }
+
+    private void awaitRotation() {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ROTATE_LOCK_SECONDS);
+        while (currentKid == null && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            loadKeys();
+        }
+    }
+
+    private List<Long> loadRevokedJtis() {
+        Set<String> revoked = stringRedisTemplate.opsForZSet()
+                .rangeByScore(LOGIN_REVOKED_KEY, System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        return revoked == null ? Collections.emptyList()
+                : revoked.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    private boolean isRotationDue(String kid) {
+        return System.currentTimeMillis() / 1000 - Long.parseLong(kid) >= TimeUnit.HOURS.toSeconds(keyRotationHours);
+    }
+}
@@ -2,59 +2,195 @@ package com.hmdp.utils;
 
 
 import cn.hutool.core.lang.UUID;
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+import static com.hmdp.utils.RedisConstants.LOCK_CHANNEL;
+
+/**
+ * 基于redis hash的可重入锁
+ * field为线程标识，value为重入次数；未指定有效期时由看门狗定期续期
+ * 等待锁的线程订阅释放通知，而不是轮询
+ */
+@Slf4j
 public class SimpleRedisLock implements ILock {
     private String name;
     private StringRedisTemplate stringRedisTemplate;
+    private RedisLockSubscriber lockSubscriber;
+    //最近一次获取锁时的有效期，重入释放时用于刷新
+    private volatile long leaseMillis;
 
     private final static String KEY_PREFIX = "lock:";
     private final static String ID_PREFIX = UUID.randomUUID().toString(true) + "-";
+    //看门狗模式下锁的有效期，每隔三分之一有效期续期一次
+    private static final long WATCHDOG_LEASE_MILLIS = 30000L;
 
+    private static final DefaultRedisScript<Long> LOCK_SCRIPT;
     private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
     static {
+        LOCK_SCRIPT = new DefaultRedisScript<>();
+        LOCK_SCRIPT.setLocation(new ClassPathResource("lock.lua"));
+        LOCK_SCRIPT.setResultType(Long.class);
         UNLOCK_SCRIPT = new DefaultRedisScript<>();
         UNLOCK_SCRIPT.setLocation(new ClassPathResource("unLock.lua"));
         UNLOCK_SCRIPT.setResultType(Long.class);
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("renewLock.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
     }
 
+    //所有锁共用的看门狗线程
+    private static final ScheduledExecutorService WATCHDOG =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("lock-watchdog-", true));
+    //锁key:线程标识 -> 续期任务
+    private static final Map<String, RenewalEntry> RENEWALS = new ConcurrentHashMap<>();
+
     public SimpleRedisLock(String name, StringRedisTemplate stringRedisTemplate) {
+        this(name, stringRedisTemplate, null);
+    }
+
+    /**
+     * @param lockSubscriber 锁释放通知，为null时等待锁的线程按剩余有效期定时重试
+     */
+    public SimpleRedisLock(String name, StringRedisTemplate stringRedisTemplate, RedisLockSubscriber lockSubscriber) {
         this.name = name;
         this.stringRedisTemplate = stringRedisTemplate;
+        this.lockSubscriber = lockSubscriber;
     }
 
     @Override
     public boolean tryLock(long timeoutSec) {
-        //获取线程标识
-        String threadId = ID_PREFIX + Thread.currentThread().getId();
-        //获取锁
-        Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + name, threadId, timeoutSec, TimeUnit.SECONDS);
-        return Boolean.TRUE.equals(success);
-    }
-
-//    @Override
-//    public void unLock() {
-//        //获取锁的key
-//        String threadID = ID_PREFIX + Thread.currentThread().getId();
-//        //获取线程标识
-//        String id = stringRedisTemplate.opsForValue().get(KEY_PREFIX + name);
-//        //判断标识是否一致
-//        if (id.equals(threadID)){
-//            //释放锁
-//            stringRedisTemplate.delete(KEY_PREFIX + name);
-//        }
-//    }
+        return tryAcquire(TimeUnit.SECONDS.toMillis(timeoutSec)) == null;
+    }
+
+    @Override
+    public boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        long lease = leaseTime > 0 ? unit.toMillis(leaseTime) : -1;
+        Long ttl = tryAcquire(lease);
+        if (ttl == null) {
+            return true;
+        }
+        long deadline = System.currentTimeMillis() + unit.toMillis(waitTime);
+        if (deadline <= System.currentTimeMillis()) {
+            return false;
+        }
+        String channel = LOCK_CHANNEL + name;
+        RedisLockSubscriber.Waiters waiters = lockSubscriber == null ? null : lockSubscriber.subscribe(channel);
+        try {
+            //订阅之后再尝试一次，避免错过订阅前发出的释放通知
+            ttl = tryAcquire(lease);
+            while (ttl != null) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                //锁的剩余有效期内等待释放通知，锁过期时也会被唤醒重试
+                long waitMillis = ttl >= 0 ? Math.min(ttl, remaining) : remaining;
+                if (waiters != null) {
+                    waiters.await(waitMillis);
+                } else {
+                    Thread.sleep(Math.min(waitMillis, 100));
+                }
+                ttl = tryAcquire(lease);
+            }
+            return true;
+        } finally {
+            if (waiters != null) {
+                lockSubscriber.unsubscribe(channel);
+            }
+        }
+    }
 
     @Override
     public void unLock() {
-        stringRedisTemplate.execute(
+        String threadId = ID_PREFIX + Thread.currentThread().getId();
+        Long result = stringRedisTemplate.execute(
                 UNLOCK_SCRIPT,
-                Collections.singletonList(KEY_PREFIX+name),
-                ID_PREFIX+Thread.currentThread().getId());
+                Collections.singletonList(KEY_PREFIX + name),
+                threadId, String.valueOf(leaseMillis), LOCK_CHANNEL + name);
+        if (result == null) {
+            //锁已过期或被其他线程持有，续期任务由看门狗发现后自行停止
+            log.warn("锁{}不是当前线程持有", name);
+            return;
+        }
+        cancelRenewal(threadId);
+    }
+
+    //获取成功返回null，否则返回锁的剩余有效期
+    private Long tryAcquire(long lease) {
+        String threadId = ID_PREFIX + Thread.currentThread().getId();
+        long millis = lease > 0 ? lease : WATCHDOG_LEASE_MILLIS;
+        Long ttl = stringRedisTemplate.execute(
+                LOCK_SCRIPT,
+                Collections.singletonList(KEY_PREFIX + name),
+                threadId, String.valueOf(millis));
+        if (ttl == null) {
+            leaseMillis = millis;
+            scheduleRenewal(threadId, lease <= 0);
+        }
+        return ttl;
+    }
+
+    //看门狗模式下首次获取时开始续期，续期期间的重入都计入次数
+    private void scheduleRenewal(String threadId, boolean watchdog) {
+        String lockKey = KEY_PREFIX + name;
+        RENEWALS.compute(lockKey + ":" + threadId, (key, entry) -> {
+            if (entry == null) {
+                if (!watchdog) {
+                    return null;
+                }
+                entry = new RenewalEntry();
+                entry.future = WATCHDOG.scheduleAtFixedRate(() -> renew(lockKey, threadId),
+                        WATCHDOG_LEASE_MILLIS / 3, WATCHDOG_LEASE_MILLIS / 3, TimeUnit.MILLISECONDS);
+            }
+            entry.holds++;
+            return entry;
+        });
+    }
+
+    //每次释放减少一次重入，完全释放时停止续期
+    private void cancelRenewal(String threadId) {
+        RENEWALS.computeIfPresent(KEY_PREFIX + name + ":" + threadId, (key, entry) -> {
+            if (--entry.holds > 0) {
+                return entry;
+            }
+            entry.future.cancel(false);
+            return null;
+        });
+    }
+
+    private void renew(String lockKey, String threadId) {
+        try {
+            Long renewed = stringRedisTemplate.execute(
+                    RENEW_SCRIPT,
+                    Collections.singletonList(lockKey),
+                    threadId, String.valueOf(WATCHDOG_LEASE_MILLIS));
+            if (renewed == null || renewed == 0) {
+                //锁已不再持有
+                RenewalEntry entry = RENEWALS.remove(lockKey + ":" + threadId);
+                if (entry != null) {
+                    entry.future.cancel(false);
+                }
+            }
+        } catch (Exception e) {
+            log.error("锁{}续期失败", lockKey, e);
+        }
+    }
+
+    private static class RenewalEntry {
+        private ScheduledFuture<?> future;
+        private int holds;
     }
 }
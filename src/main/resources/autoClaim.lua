@@ -0,0 +1,4 @@
+-- 把空闲超过阈值的pending消息转移给当前消费者，返回认领的数量
+-- ARGV[1]消费者组，ARGV[2]消费者，ARGV[3]空闲阈值，ARGV[4]最大数量
+local result = redis.call('xautoclaim',KEYS[1],ARGV[1],ARGV[2],ARGV[3],'0-0','COUNT',ARGV[4],'JUSTID')
+return #result[2]
@@ -0,0 +1,18 @@
+-- 关注或取关：KEYS[1]为关注者的关注集合，KEYS[2]为被关注者的粉丝集合，KEYS[3]、KEYS[4]为两人的计数
+-- ARGV[1]为关注者id，ARGV[2]为被关注者id，ARGV[3]为1时关注、为0时取关；关系有变化时返回1
+local delta = 1
+if (ARGV[3] == '1') then
+    if (redis.call('sadd',KEYS[1],ARGV[2]) == 0) then
+        return 0
+    end
+    redis.call('sadd',KEYS[2],ARGV[1])
+else
+    if (redis.call('srem',KEYS[1],ARGV[2]) == 0) then
+        return 0
+    end
+    redis.call('srem',KEYS[2],ARGV[1])
+    delta = -1
+end
+redis.call('hincrby',KEYS[3],'follows',delta)
+redis.call('hincrby',KEYS[4],'followers',delta)
+return 1
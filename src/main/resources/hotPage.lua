@@ -0,0 +1,25 @@
+-- 热门博客分页：KEYS[1]为排行，ARGV[1]为上一页最后一篇的热度，ARGV[2]为其博客id（第一页为空），ARGV[3]为每页条数
+-- 热度相同的博客按id的字节序倒序排列，跳过热度与上一页最后一篇相同、且id不小于它的博客
+-- 返回博客id和热度交替的列表
+local max = ARGV[1]
+local lastId = ARGV[2]
+local count = tonumber(ARGV[3])
+local maxScore = tonumber(max)
+local result = {}
+local offset = 0
+while true do
+    local batch = redis.call('zrevrangebyscore', KEYS[1], max, '-inf', 'WITHSCORES', 'LIMIT', offset, count)
+    if (#batch == 0) then
+        return result
+    end
+    for i = 1, #batch, 2 do
+        if (lastId == '' or tonumber(batch[i + 1]) < maxScore or batch[i] < lastId) then
+            table.insert(result, batch[i])
+            table.insert(result, batch[i + 1])
+            if (#result >= count * 2) then
+                return result
+            end
+        end
+    end
+    offset = offset + #batch / 2
+end
@@ -0,0 +1,12 @@
+-- 校准热门排行：KEYS[1]为重建中的排行，KEYS[2]、KEYS[3]为待同步和同步中的点赞数增量
+-- ARGV[1]为排行最多保留的博客数，之后每两个参数为博客id和按数据库点赞数计算的热度
+-- 与点赞脚本互斥执行，写入后的点赞由点赞脚本同时累加到重建中的排行，不会丢失也不会重复计算
+for i = 2, #ARGV, 2 do
+    local pending = tonumber(redis.call('hget',KEYS[2],ARGV[i]) or 0) + tonumber(redis.call('hget',KEYS[3],ARGV[i]) or 0)
+    redis.call('zadd',KEYS[1],tonumber(ARGV[i + 1]) + pending,ARGV[i])
+end
+local maxSize = tonumber(ARGV[1])
+if (maxSize > 0) then
+    redis.call('zremrangebyrank',KEYS[1],0,-maxSize - 1)
+end
+return 0
@@ -0,0 +1,13 @@
+-- 租约：ARGV[1]为持有者，ARGV[2]为租约时长，ARGV[3]为1时获取或续约，否则释放
+local owner = redis.call('get',KEYS[1])
+if (ARGV[3] == '1') then
+    if (owner == false or owner == ARGV[1]) then
+        redis.call('set',KEYS[1],ARGV[1],'PX',ARGV[2])
+        return 1
+    end
+    return 0
+end
+if (owner == ARGV[1]) then
+    return redis.call('del',KEYS[1])
+end
+return 0
@@ -0,0 +1,19 @@
+-- 点赞或取消点赞：KEYS[1]为博客的点赞集合，KEYS[2]为待同步到数据库的点赞数增量，KEYS[3]为热门博客排行
+-- KEYS[4]为校准中重建的排行，已写入其中的博客同样累加，替换排行时不会丢失重建期间的点赞
+-- ARGV[1]为用户id，ARGV[2]为博客id，ARGV[3]为点赞时间；返回点赞数的变化
+local delta = 1
+if (redis.call('zscore',KEYS[1],ARGV[1]) == false) then
+    redis.call('zadd',KEYS[1],ARGV[3],ARGV[1])
+else
+    redis.call('zrem',KEYS[1],ARGV[1])
+    delta = -1
+end
+redis.call('hincrby',KEYS[2],ARGV[2],delta)
+-- 只更新已在排行中的博客，不在排行中的由定时校准加入
+if (redis.call('zscore',KEYS[3],ARGV[2]) ~= false) then
+    redis.call('zincrby',KEYS[3],delta,ARGV[2])
+end
+if (redis.call('zscore',KEYS[4],ARGV[2]) ~= false) then
+    redis.call('zincrby',KEYS[4],delta,ARGV[2])
+end
+return delta
@@ -0,0 +1,8 @@
+-- 可重入锁：KEYS[1]为锁，ARGV[1]为线程标识，ARGV[2]为租约时长（毫秒）
+-- 获取成功返回nil，失败返回锁的剩余有效期
+if (redis.call('exists',KEYS[1]) == 0 or redis.call('hexists',KEYS[1],ARGV[1]) == 1) then
+    redis.call('hincrby',KEYS[1],ARGV[1],1)
+    redis.call('pexpire',KEYS[1],ARGV[2])
+    return nil
+end
+return redis.call('pttl',KEYS[1])
@@ -0,0 +1,6 @@
+-- 看门狗续期：锁仍由当前线程持有时刷新有效期
+if (redis.call('hexists',KEYS[1],ARGV[1]) == 1) then
+    redis.call('pexpire',KEYS[1],ARGV[2])
+    return 1
+end
+return 0
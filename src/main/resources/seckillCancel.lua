@@ -0,0 +1,7 @@
+-- 撤销订单：释放用户的下单资格并归还一个库存，KEYS[1]为库存，KEYS[2]为下单用户集合，两个key位于同一slot
+-- 用户没有占用下单资格时不归还，重复撤销不会多归还库存
+if (redis.call('srem',KEYS[2],ARGV[1]) == 1) then
+    redis.call('incrby',KEYS[1],1)
+    return 1
+end
+return 0
@@ -0,0 +1,18 @@
+-- 分片库存：KEYS[1]为用户所属分片的库存，KEYS[2]为该分片的下单用户集合，KEYS[3]为该分片待发送的订单，三个key位于同一slot
+local userId = ARGV[1]
+local order = ARGV[2]
+local now = ARGV[3]
+
+-- 一人一单，先占用下单资格
+if (redis.call('sadd',KEYS[2],userId) == 0) then
+    return 2
+end
+
+if (tonumber(redis.call('get',KEYS[1]) or 0)>0) then
+    redis.call('incrby',KEYS[1],-1)
+    -- 与扣减库存一起记录待发送的订单，订单消息发送后由调用方删除
+    redis.call('zadd',KEYS[3],now,order)
+    return 0
+end
+-- 本分片库存不足，保留下单资格，由调用方继续尝试其他分片
+return 3
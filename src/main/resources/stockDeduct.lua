@@ -0,0 +1,7 @@
+-- 扣减单个库存分片，库存不足返回1；KEYS[2]为该分片待发送的订单，与库存位于同一slot
+if (tonumber(redis.call('get',KEYS[1]) or 0)>0) then
+    redis.call('incrby',KEYS[1],-1)
+    redis.call('zadd',KEYS[2],ARGV[2],ARGV[1])
+    return 0
+end
+return 1
@@ -1,5 +1,15 @@
-local id = redis.call('get',KEYS[1])
-if(id == ARGV[1]) then
-    return redis.call('del',KEYS[1])
+-- KEYS[1]为锁，ARGV[1]为线程标识，ARGV[2]为租约时长（毫秒），ARGV[3]为释放通知的频道
+-- 频道不是key，通过ARGV传入，集群模式下不会因为与锁不在同一slot而报错
+-- 不是当前线程持有返回nil，重入次数减一后仍持有返回0，完全释放返回1
+if (redis.call('hexists',KEYS[1],ARGV[1]) == 0) then
+    return nil
 end
-return 0
\ No newline at end of file
+local count = redis.call('hincrby',KEYS[1],ARGV[1],-1)
+if (count > 0) then
+    redis.call('pexpire',KEYS[1],ARGV[2])
+    return 0
+end
+redis.call('del',KEYS[1])
+-- 通知等待的线程
+redis.call('publish',ARGV[3],ARGV[1])
+return 1
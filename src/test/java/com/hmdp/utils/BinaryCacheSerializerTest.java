@@ -0,0 +1,78 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Follow;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BinaryCacheSerializerTest {
+    private final BinaryCacheSerializer serializer = new BinaryCacheSerializer();
+
+    @Test
+    void shopRoundTrip() {
+        Shop shop = new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://example.com/1.jpg,https://example.com/2.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39, 123456789))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+        Shop copy = serializer.deserialize(serializer.serialize(shop), Shop.class);
+        assertThat(copy).isEqualTo(shop);
+    }
+
+    @Test
+    void nullFieldsRoundTrip() {
+        Shop shop = new Shop().setId(2L);
+        assertThat(serializer.deserialize(serializer.serialize(shop), Shop.class)).isEqualTo(shop);
+        ShopType shopType = new ShopType().setId(3L).setName("美食");
+        assertThat(serializer.deserialize(serializer.serialize(shopType), ShopType.class)).isEqualTo(shopType);
+        UserDTO user = new UserDTO();
+        user.setId(4L);
+        assertThat(serializer.deserialize(serializer.serialize(user), UserDTO.class)).isEqualTo(user);
+    }
+
+    @Test
+    void unregisteredTypeFallsBackToJson() {
+        Follow follow = new Follow().setId(5L).setUserId(6L).setFollowUserId(7L);
+        byte[] bytes = serializer.serialize(follow);
+        assertThat(bytes[0]).isEqualTo((byte) '{');
+        assertThat(serializer.deserialize(bytes, Follow.class)).isEqualTo(follow);
+    }
+
+    @Test
+    void logicExpireRoundTrip() {
+        Shop shop = new Shop().setId(8L).setName("开乐迪KTV");
+        LocalDateTime expireTime = LocalDateTime.now().plusMinutes(30).truncatedTo(ChronoUnit.MILLIS);
+        byte[] bytes = serializer.serializeWithExpire(shop, expireTime);
+        assertThat(serializer.readExpireTime(bytes)).isEqualTo(expireTime);
+        RedisData redisData = serializer.deserializeWithExpire(bytes, Shop.class);
+        assertThat(redisData.getExpireTime()).isEqualTo(expireTime);
+        assertThat(redisData.getData()).isEqualTo(shop);
+    }
+
+    @Test
+    void readsLegacyJsonWithExpire() {
+        Shop shop = new Shop().setId(9L).setName("海底捞");
+        LocalDateTime expireTime = LocalDateTime.now().plusMinutes(30).truncatedTo(ChronoUnit.SECONDS);
+        byte[] bytes = new JsonCacheSerializer().serializeWithExpire(shop, expireTime);
+        assertThat(serializer.readExpireTime(bytes)).isEqualTo(expireTime);
+        RedisData redisData = serializer.deserializeWithExpire(bytes, Shop.class);
+        assertThat(redisData.getData()).isEqualTo(shop);
+    }
+}
@@ -0,0 +1,192 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CacheClientTest {
+    private RedisStub redis;
+    private LocalCacheManager localCacheManager;
+    private CacheRebuildExecutor rebuildExecutor;
+    private CacheClient cacheClient;
+    private final AtomicInteger dbQueries = new AtomicInteger();
+    private final Function<Long, Shop> db = id -> {
+        dbQueries.incrementAndGet();
+        return id > 0 ? new Shop().setId(id).setName("店铺" + id) : null;
+    };
+
+    @BeforeEach
+    void setUp() {
+        redis = new RedisStub();
+        localCacheManager = new LocalCacheManager(redis.template);
+        rebuildExecutor = new CacheRebuildExecutor(1, 10);
+        cacheClient = new CacheClient(redis.template, localCacheManager, new JsonCacheSerializer(), rebuildExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        rebuildExecutor.shutdown();
+    }
+
+    @Test
+    void localCacheServesRepeatedReads() {
+        cacheClient.enableLocalCache(CACHE_SHOP_KEY, 100, 1L, TimeUnit.MINUTES);
+        Shop first = query(1L);
+        Shop second = query(1L);
+        assertThat(second).isSameAs(first);
+        assertThat(dbQueries).hasValue(1);
+        assertThat(redis.reads).hasValue(1);
+    }
+
+    @Test
+    void withoutLocalCacheEveryReadGoesToRedis() {
+        query(1L);
+        query(1L);
+        assertThat(dbQueries).hasValue(1);
+        assertThat(redis.reads).hasValue(2);
+    }
+
+    @Test
+    void deleteInvalidatesLocalCacheAndNotifiesOtherNodes() {
+        cacheClient.enableLocalCache(CACHE_SHOP_KEY, 100, 1L, TimeUnit.MINUTES);
+        query(1L);
+        cacheClient.delete(CACHE_SHOP_KEY + 1);
+        assertThat(redis.published).containsExactly(CACHE_SHOP_KEY + 1);
+        assertThat(redis.values).doesNotContainKey(CACHE_SHOP_KEY + 1);
+        query(1L);
+        assertThat(dbQueries).hasValue(2);
+    }
+
+    @Test
+    void invalidateMessageFromAnotherNodeDropsLocalEntry() {
+        cacheClient.enableLocalCache(CACHE_SHOP_KEY, 100, 1L, TimeUnit.MINUTES);
+        query(1L);
+        query(2L);
+        //其他节点更新了店铺1，redis中已是新值
+        cacheClient.set(CACHE_SHOP_KEY + 1, new Shop().setId(1L).setName("新名字"), 1L, TimeUnit.MINUTES);
+        localCacheManager.onMessage(new DefaultMessage(
+                CACHE_INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                (CACHE_SHOP_KEY + 1).getBytes(StandardCharsets.UTF_8)), null);
+        assertThat(query(1L).getName()).isEqualTo("新名字");
+        //其他key不受影响
+        int reads = redis.reads.get();
+        query(2L);
+        assertThat(redis.reads).hasValue(reads);
+    }
+
+    @Test
+    void concurrentMissesShareOneRebuild() throws Exception {
+        int threads = 8;
+        CountDownLatch started = new CountDownLatch(threads);
+        Function<Long, Shop> slowDb = id -> {
+            try {
+                //等所有线程都发起查询后再返回，保证它们同时未命中
+                started.await(5, TimeUnit.SECONDS);
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return db.apply(id);
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Shop>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(() -> {
+                    started.countDown();
+                    return cacheClient.queryWithMutex(CACHE_SHOP_KEY, 1L, Shop.class, slowDb, 1L, TimeUnit.MINUTES);
+                }));
+            }
+            for (Future<Shop> future : futures) {
+                assertThat(future.get(5, TimeUnit.SECONDS).getName()).isEqualTo("店铺1");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(dbQueries).hasValue(1);
+        //只有一个线程竞争分布式锁，其余线程等待它的结果
+        assertThat(redis.locks).hasValue(1);
+        assertThat(redis.values).doesNotContainKey(LOCK_SHOP_KEY + 1);
+    }
+
+    @Test
+    void failedRebuildReleasesLock() {
+        assertThatThrownBy(() -> cacheClient.queryWithMutex(CACHE_SHOP_KEY, 1L, Shop.class, id -> {
+            throw new IllegalStateException("db down");
+        }, 1L, TimeUnit.MINUTES)).isInstanceOf(IllegalStateException.class);
+        //失败后锁已释放，下次查询可以重建
+        assertThat(cacheClient.queryWithMutex(CACHE_SHOP_KEY, 1L, Shop.class, db, 1L, TimeUnit.MINUTES).getName())
+                .isEqualTo("店铺1");
+    }
+
+    @Test
+    void batchLoadsOnlyMissesAndCachesNullSentinels() {
+        cacheClient.set(CACHE_SHOP_KEY + 2, new Shop().setId(2L).setName("店铺2"), 1L, TimeUnit.MINUTES);
+        redis.values.put(CACHE_SHOP_KEY + 5, new byte[0]);
+        List<Collection<Long>> batches = new ArrayList<>();
+        Function<Collection<Long>, Map<Long, Shop>> batchDb = ids -> {
+            batches.add(new ArrayList<>(ids));
+            return ids.stream().map(db).filter(Objects::nonNull)
+                    .collect(Collectors.toMap(Shop::getId, Function.identity()));
+        };
+        List<Long> ids = Arrays.asList(1L, 2L, -3L, 5L, 1L);
+
+        Map<Long, Shop> first = cacheClient.queryManyWithPassThrough(CACHE_SHOP_KEY, ids, Shop.class, batchDb, 1L, TimeUnit.MINUTES);
+        assertThat(first).containsOnlyKeys(1L, 2L);
+        //缓存的空值不查数据库，重复的id只查一次
+        assertThat(batches).containsExactly(Arrays.asList(1L, -3L));
+        assertThat(redis.values.get(CACHE_SHOP_KEY + (-3))).isEmpty();
+        assertThat(redis.reads).hasValue(1);
+
+        Map<Long, Shop> second = cacheClient.queryManyWithPassThrough(CACHE_SHOP_KEY, ids, Shop.class, batchDb, 1L, TimeUnit.MINUTES);
+        assertThat(second.keySet()).containsExactly(1L, 2L);
+        assertThat(second.get(1L).getName()).isEqualTo("店铺1");
+        assertThat(batches).hasSize(1);
+        assertThat(redis.reads).hasValue(2);
+    }
+
+    @Test
+    void batchLogicExpireSharesEntriesWithSingleQuery() {
+        cacheClient.setWithLogicExpire(CACHE_SHOP_KEY + 2, new Shop().setId(2L).setName("店铺2"), 1L, TimeUnit.MINUTES);
+        Function<Collection<Long>, Map<Long, Shop>> batchDb = ids -> ids.stream().map(db).filter(Objects::nonNull)
+                .collect(Collectors.toMap(Shop::getId, Function.identity()));
+
+        Map<Long, Shop> shops = cacheClient.queryManyWithLogicExpire(
+                CACHE_SHOP_KEY, Arrays.asList(1L, 2L, -3L), Shop.class, batchDb, 1L, TimeUnit.MINUTES);
+        assertThat(shops).containsOnlyKeys(1L, 2L);
+        assertThat(dbQueries).hasValue(2);
+        //未命中的店铺按逻辑过期格式写回，按id查询可以直接读取
+        Shop shop = cacheClient.queryWithLogicExpire(CACHE_SHOP_KEY, 1L, Shop.class, db, 1L, TimeUnit.MINUTES);
+        assertThat(shop.getName()).isEqualTo("店铺1");
+        assertThat(redis.values.get(CACHE_SHOP_KEY + (-3))).isEmpty();
+        assertThat(dbQueries).hasValue(2);
+    }
+
+    private Shop query(Long id) {
+        return cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, db, 1L, TimeUnit.MINUTES);
+    }
+}
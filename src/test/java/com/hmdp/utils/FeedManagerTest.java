@@ -0,0 +1,100 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FeedManagerTest {
+    private StringRedisTemplate stringRedisTemplate;
+    private FeedManager feedManager;
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        feedManager = new FeedManager(stringRedisTemplate, 1000, 1000, 1, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        feedManager.destroy();
+    }
+
+    @Test
+    void mergesInboxAndOutboxesByTime() {
+        pipelineReturns(
+                tuples("5", 500, "3", 300, "1", 100),
+                tuples("4", 400, "2", 200),
+                tuples("6", 350));
+        assertThat(values(feedManager.read(1L, Arrays.asList(2L, 3L), 1000, 0, 10)))
+                .containsExactly("5", "4", "6", "3", "2", "1");
+        assertThat(values(feedManager.read(1L, Arrays.asList(2L, 3L), 1000, 0, 3)))
+                .containsExactly("5", "4", "6");
+    }
+
+    @Test
+    void skipsOffsetAfterMerging() {
+        pipelineReturns(
+                tuples("5", 500, "3", 300, "1", 100),
+                tuples("4", 400, "2", 200));
+        assertThat(values(feedManager.read(1L, Collections.singletonList(2L), 1000, 2, 2)))
+                .containsExactly("3", "2");
+    }
+
+    @Test
+    void removesBlogsPushedBeforeSwitchingToPull() {
+        //作者切换为拉模式前推送到收件箱的博客，同时出现在发件箱
+        pipelineReturns(
+                tuples("5", 500, "4", 400, "3", 300),
+                tuples("4", 400, "2", 200));
+        assertThat(values(feedManager.read(1L, Collections.singletonList(2L), 1000, 1, 10)))
+                .containsExactly("4", "3", "2");
+    }
+
+    @Test
+    void ordersSameTimeByValueDescending() {
+        pipelineReturns(
+                tuples("6", 300),
+                tuples("7", 300));
+        assertThat(values(feedManager.read(1L, Collections.singletonList(2L), 1000, 0, 10)))
+                .containsExactly("7", "6");
+    }
+
+    @Test
+    void emptySources() {
+        pipelineReturns(Collections.emptySet(), null);
+        assertThat(feedManager.read(1L, Collections.singletonList(2L), 1000, 0, 10)).isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void pipelineReturns(Object... results) {
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Arrays.asList(results));
+    }
+
+    //按分数降序给出，与ZREVRANGEBYSCORE的结果一致
+    private static Set<ZSetOperations.TypedTuple<String>> tuples(Object... valueAndScores) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = new LinkedHashSet<>();
+        for (int i = 0; i < valueAndScores.length; i += 2) {
+            tuples.add(new DefaultTypedTuple<>((String) valueAndScores[i], ((Number) valueAndScores[i + 1]).doubleValue()));
+        }
+        return tuples;
+    }
+
+    private static String[] values(List<ZSetOperations.TypedTuple<String>> tuples) {
+        return tuples.stream().map(ZSetOperations.TypedTuple::getValue).toArray(String[]::new);
+    }
+}
@@ -0,0 +1,34 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderDeliveryCounterTest {
+    private final OrderDeliveryCounter counter = new OrderDeliveryCounter(3);
+
+    @Test
+    void failedDeliveriesExhaustRetries() {
+        assertThat(counter.exhausted("1-0", 2)).isFalse();
+        assertThat(counter.exhausted("1-0", 3)).isTrue();
+    }
+
+    @Test
+    void lockTimeoutsDoNotCountAsDeliveries() {
+        //前两次投递都获取订单锁超时
+        counter.lockTimeout("1-0");
+        counter.lockTimeout("1-0");
+        assertThat(counter.deliveries("1-0", 4)).isEqualTo(2);
+        assertThat(counter.exhausted("1-0", 4)).isFalse();
+        assertThat(counter.exhausted("1-0", 5)).isTrue();
+        //其他消息不受影响
+        assertThat(counter.exhausted("2-0", 3)).isTrue();
+    }
+
+    @Test
+    void doneForgetsLockTimeouts() {
+        counter.lockTimeout("1-0");
+        counter.done("1-0");
+        assertThat(counter.deliveries("1-0", 3)).isEqualTo(3);
+    }
+}
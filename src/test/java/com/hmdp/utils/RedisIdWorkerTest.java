@@ -0,0 +1,114 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RedisIdWorkerTest {
+    private static final long BEGIN_TIMESTAMP = 1735689600L;
+
+    private StringRedisTemplate stringRedisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    //可以租用的机器id，其他id均已被占用
+    private volatile String freeWorkerKey = ID_WORKER_KEY + 513;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any())).thenAnswer(inv -> {
+            List<String> keys = inv.getArgument(1);
+            return keys.get(0).equals(freeWorkerKey) ? 1L : 0L;
+        });
+    }
+
+    @Test
+    void redisModeJoinsSecondsAndCounter() {
+        when(valueOperations.increment(anyString())).thenReturn(7L);
+        runner("hmdp.id.mode=redis").run(context -> {
+            long before = nowSecond();
+            long id = context.getBean(RedisIdWorker.class).nextId("order");
+            long after = nowSecond();
+            assertThat(id & 0xFFFFFFFFL).isEqualTo(7L);
+            assertThat(id >>> 32).isBetween(before - BEGIN_TIMESTAMP, after - BEGIN_TIMESTAMP);
+        });
+    }
+
+    @Test
+    void segmentModeAllocatesLocally() {
+        when(valueOperations.increment(anyString(), anyLong())).thenReturn(100L, 200L);
+        runner("hmdp.id.mode=segment", "hmdp.id.segment.size=100", "hmdp.id.segment.prefetch-ratio=0").run(context -> {
+            RedisIdWorker idWorker = context.getBean(RedisIdWorker.class);
+            for (long expected = 1; expected <= 150; expected++) {
+                assertThat(idWorker.nextId("order") & 0xFFFFFFFFL).isEqualTo(expected);
+            }
+        });
+    }
+
+    @Test
+    void snowflakeLayout() {
+        runner("hmdp.id.mode=snowflake").run(context -> {
+            RedisIdWorker idWorker = context.getBean(RedisIdWorker.class);
+            long before = nowSecond();
+            Set<Long> ids = new HashSet<>();
+            long last = 0;
+            for (int i = 0; i < 20000; i++) {
+                long id = idWorker.nextId("order");
+                assertThat(id).isGreaterThan(last);
+                last = id;
+                ids.add(id);
+                //低32位：秒内毫秒数(10位)、机器id(10位)、序列号(12位)
+                assertThat((id >>> 12) & 1023).isEqualTo(513L);
+                assertThat((id >>> 22) & 1023).isLessThan(1000L);
+            }
+            long after = nowSecond();
+            assertThat(ids).hasSize(20000);
+            assertThat(last >>> 32).isBetween(before - BEGIN_TIMESTAMP, after - BEGIN_TIMESTAMP + 1);
+        });
+    }
+
+    @Test
+    void snowflakeStopsWhenLeaseExpired() {
+        runner("hmdp.id.mode=snowflake", "hmdp.id.worker.lease-millis=100", "hmdp.id.worker.heartbeat-millis=60000").run(context -> {
+            RedisIdWorker idWorker = context.getBean(RedisIdWorker.class);
+            idWorker.nextId("order");
+            //机器id被其他节点接管，续约失败
+            freeWorkerKey = null;
+            idWorker.renewWorkerId();
+            Thread.sleep(150);
+            assertThatThrownBy(() -> idWorker.nextId("order")).isInstanceOf(IllegalStateException.class);
+        });
+    }
+
+    private ApplicationContextRunner runner(String... properties) {
+        return new ApplicationContextRunner()
+                .withBean(StringRedisTemplate.class, () -> stringRedisTemplate)
+                .withUserConfiguration(RedisIdWorker.class)
+                .withPropertyValues(properties);
+    }
+
+    private static long nowSecond() {
+        return LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+    }
+}
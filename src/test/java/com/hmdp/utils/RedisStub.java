@@ -0,0 +1,98 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 测试用的内存版StringRedisTemplate，只支持缓存读写用到的字符串命令，不处理过期时间
+ */
+class RedisStub {
+    final Map<String, byte[]> values = new ConcurrentHashMap<>();
+    final List<String> published = Collections.synchronizedList(new ArrayList<>());
+    //从redis读取字符串的次数，包括GET和MGET
+    final AtomicInteger reads = new AtomicInteger();
+    //SETNX加锁的次数
+    final AtomicInteger locks = new AtomicInteger();
+    final StringRedisTemplate template = mock(StringRedisTemplate.class);
+
+    @SuppressWarnings("unchecked")
+    RedisStub() {
+        RedisConnection connection = mock(RedisConnection.class);
+        RedisStringCommands commands = mock(RedisStringCommands.class);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(connection.stringCommands()).thenReturn(commands);
+        when(commands.get(any(byte[].class))).thenAnswer(inv -> {
+            reads.incrementAndGet();
+            return values.get(key(inv.getArgument(0)));
+        });
+        when(commands.mGet(any())).thenAnswer(inv -> {
+            reads.incrementAndGet();
+            List<byte[]> result = new ArrayList<>();
+            for (Object key : inv.getArguments()) {
+                result.add(values.get(key((byte[]) key)));
+            }
+            return result;
+        });
+        when(commands.setEx(any(byte[].class), anyLong(), any(byte[].class))).thenAnswer(inv -> {
+            values.put(key(inv.getArgument(0)), inv.getArgument(2));
+            return true;
+        });
+        when(commands.set(any(byte[].class), any(byte[].class))).thenAnswer(inv -> {
+            values.put(key(inv.getArgument(0)), inv.getArgument(1));
+            return true;
+        });
+        when(template.execute(any(RedisCallback.class)))
+                .thenAnswer(inv -> ((RedisCallback<Object>) inv.getArgument(0)).doInRedis(connection));
+        when(template.executePipelined(any(RedisCallback.class))).thenAnswer(inv -> {
+            ((RedisCallback<Object>) inv.getArgument(0)).doInRedis(connection);
+            return Collections.emptyList();
+        });
+        when(template.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class)))
+                .thenAnswer(inv -> {
+                    locks.incrementAndGet();
+                    return values.putIfAbsent(inv.getArgument(0), bytes(inv.getArgument(1))) == null;
+                });
+        when(valueOperations.get(anyString())).thenAnswer(inv -> {
+            byte[] value = values.get(inv.<String>getArgument(0));
+            return value == null ? null : new String(value, StandardCharsets.UTF_8);
+        });
+        doAnswer(inv -> {
+            values.put(inv.getArgument(0), bytes(inv.getArgument(1)));
+            return null;
+        }).when(valueOperations).set(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        when(template.delete(anyString())).thenAnswer(inv -> values.remove(inv.<String>getArgument(0)) != null);
+        doAnswer(inv -> {
+            published.add(inv.getArgument(1));
+            return null;
+        }).when(template).convertAndSend(anyString(), anyString());
+        when(template.hasKey(anyString())).thenAnswer(inv -> values.containsKey(inv.<String>getArgument(0)));
+    }
+
+    private static String key(byte[] key) {
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,91 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_EPOCH_KEY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SeckillSoldOutCacheTest {
+    private static final Long VOUCHER_ID = 1L;
+
+    private final AtomicLong epoch = new AtomicLong();
+    private final List<String> published = new ArrayList<>();
+    private SeckillSoldOutCache node;
+    private SeckillSoldOutCache otherNode;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        StringRedisTemplate template = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(template.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(SECKILL_STOCK_EPOCH_KEY + VOUCHER_ID)).thenAnswer(inv -> String.valueOf(epoch.get()));
+        when(valueOperations.increment(SECKILL_STOCK_EPOCH_KEY + VOUCHER_ID)).thenAnswer(inv -> epoch.incrementAndGet());
+        doAnswer(inv -> published.add(inv.getArgument(1)))
+                .when(template).convertAndSend(anyString(), anyString());
+        node = new SeckillSoldOutCache(template, 60);
+        otherNode = new SeckillSoldOutCache(template, 60);
+    }
+
+    @Test
+    void soldOutIsSharedWithOtherNodes() {
+        node.markSoldOut(VOUCHER_ID, node.epoch(VOUCHER_ID));
+        deliver(otherNode);
+        assertThat(node.isSoldOut(VOUCHER_ID)).isTrue();
+        assertThat(otherNode.isSoldOut(VOUCHER_ID)).isTrue();
+
+        otherNode.reset(VOUCHER_ID);
+        deliver(node);
+        assertThat(node.isSoldOut(VOUCHER_ID)).isFalse();
+        assertThat(otherNode.isSoldOut(VOUCHER_ID)).isFalse();
+    }
+
+    @Test
+    void soldOutObservedBeforeTopUpIsIgnored() {
+        //请求在补充库存前获取版本并扣减失败
+        long before = node.epoch(VOUCHER_ID);
+        otherNode.reset(VOUCHER_ID);
+        deliver(node);
+        node.markSoldOut(VOUCHER_ID, before);
+        assertThat(node.isSoldOut(VOUCHER_ID)).isFalse();
+        assertThat(published).isEmpty();
+    }
+
+    @Test
+    void lateSoldOutMessageDoesNotOverrideReset() {
+        long before = node.epoch(VOUCHER_ID);
+        //售罄通知在补充库存通知之后到达其他节点
+        node.markSoldOut(VOUCHER_ID, before);
+        String soldOut = published.remove(0);
+        otherNode.reset(VOUCHER_ID);
+        deliver(node);
+        otherNode.onMessage(message(soldOut), null);
+        assertThat(node.isSoldOut(VOUCHER_ID)).isFalse();
+        assertThat(otherNode.isSoldOut(VOUCHER_ID)).isFalse();
+    }
+
+    private void deliver(SeckillSoldOutCache target) {
+        for (String body : published) {
+            target.onMessage(message(body), null);
+        }
+        published.clear();
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(SECKILL_SOLD_OUT_CHANNEL.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
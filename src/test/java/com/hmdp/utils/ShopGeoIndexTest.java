@@ -0,0 +1,113 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ShopGeoIndexTest {
+    private static final double EARTH_RADIUS = 6372797.560856;
+    private static final double CENTER_X = 120.15;
+    private static final double CENTER_Y = 30.27;
+
+    private ShopGeoIndex index;
+    private List<double[]> shops;
+
+    @BeforeEach
+    void setUp() {
+        index = new ShopGeoIndex(null, "local", 0.01);
+        shops = new ArrayList<>();
+        Random random = new Random(42);
+        for (long id = 1; id <= 3000; id++) {
+            long typeId = id % 3 + 1;
+            double x = CENTER_X + (random.nextDouble() - 0.5) * 0.4;
+            double y = CENTER_Y + (random.nextDouble() - 0.5) * 0.4;
+            index.put(id, typeId, x, y);
+            shops.add(new double[]{id, typeId, x, y});
+        }
+    }
+
+    @Test
+    void searchMatchesBruteForce() {
+        Random random = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            double x = CENTER_X + (random.nextDouble() - 0.5) * 0.3;
+            double y = CENTER_Y + (random.nextDouble() - 0.5) * 0.3;
+            double radius = 500 + random.nextDouble() * 5000;
+            long typeId = i % 3 + 1;
+            List<ShopGeoIndex.Neighbor> expected = bruteForce(typeId, x, y, radius);
+            List<ShopGeoIndex.Neighbor> actual = index.search(typeId, x, y, radius, Integer.MAX_VALUE);
+            assertSame(actual, expected);
+            assertSame(index.search(typeId, x, y, radius, 10), expected.subList(0, Math.min(10, expected.size())));
+        }
+    }
+
+    @Test
+    void cursorPagesCoverSearchResult() {
+        List<ShopGeoIndex.Neighbor> expected = bruteForce(2L, CENTER_X, CENTER_Y, 3000);
+        List<ShopGeoIndex.Neighbor> paged = new ArrayList<>();
+        double afterDistance = -1;
+        long afterId = 0;
+        while (true) {
+            List<ShopGeoIndex.Neighbor> page = index.search(2L, CENTER_X, CENTER_Y, 3000, afterDistance, afterId, 7);
+            if (page.isEmpty()) {
+                break;
+            }
+            paged.addAll(page);
+            ShopGeoIndex.Neighbor last = page.get(page.size() - 1);
+            afterDistance = last.getDistance();
+            afterId = last.getShopId();
+        }
+        assertSame(paged, expected);
+    }
+
+    @Test
+    void nearestMatchesBruteForce() {
+        List<ShopGeoIndex.Neighbor> expected = bruteForce(1L, CENTER_X, CENTER_Y, 5000);
+        assertSame(index.nearest(1L, CENTER_X, CENTER_Y, 5, 5000), expected.subList(0, 5));
+        //半径内不足k家时返回半径内的全部店铺
+        List<ShopGeoIndex.Neighbor> small = bruteForce(1L, CENTER_X, CENTER_Y, 100);
+        assertSame(index.nearest(1L, CENTER_X, CENTER_Y, 1000, 100), small);
+    }
+
+    @Test
+    void putMovesShopBetweenCellsAndTypes() {
+        index.put(1L, 3L, CENTER_X, CENTER_Y);
+        List<ShopGeoIndex.Neighbor> result = index.search(3L, CENTER_X, CENTER_Y, 1, 10);
+        assertThat(result).extracting(ShopGeoIndex.Neighbor::getShopId).containsExactly(1L);
+        assertThat(index.search(2L, CENTER_X, CENTER_Y, 100000, Integer.MAX_VALUE))
+                .extracting(ShopGeoIndex.Neighbor::getShopId).doesNotContain(1L);
+    }
+
+    private List<ShopGeoIndex.Neighbor> bruteForce(long typeId, double x, double y, double radius) {
+        return shops.stream()
+                .filter(shop -> shop[1] == typeId)
+                .map(shop -> new ShopGeoIndex.Neighbor((long) shop[0], haversine(x, y, shop[2], shop[3])))
+                .filter(neighbor -> neighbor.getDistance() <= radius)
+                .sorted(Comparator.comparingDouble(ShopGeoIndex.Neighbor::getDistance))
+                .collect(Collectors.toList());
+    }
+
+    private static void assertSame(List<ShopGeoIndex.Neighbor> actual, List<ShopGeoIndex.Neighbor> expected) {
+        assertThat(actual).extracting(ShopGeoIndex.Neighbor::getShopId)
+                .containsExactlyElementsOf(expected.stream().map(ShopGeoIndex.Neighbor::getShopId).collect(Collectors.toList()));
+        for (int i = 0; i < actual.size(); i++) {
+            assertThat(actual.get(i).getDistance()).isCloseTo(expected.get(i).getDistance(), within(1e-6));
+        }
+    }
+
+    private static double haversine(double x1, double y1, double x2, double y2) {
+        double dLat = Math.toRadians(y2 - y1);
+        double dLon = Math.toRadians(x2 - x1);
+        double a = Math.pow(Math.sin(dLat / 2), 2)
+                + Math.cos(Math.toRadians(y1)) * Math.cos(Math.toRadians(y2)) * Math.pow(Math.sin(dLon / 2), 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(a));
+    }
+}
@@ -0,0 +1,122 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.hmdp.utils.RedisConstants.LOCK_CHANNEL;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SimpleRedisLockTest {
+    private static final String NAME = "order:1";
+
+    //锁key -> (线程标识 -> 重入次数)，按脚本的逻辑在内存中执行
+    private final Map<String, Map<String, Integer>> hashes = new HashMap<>();
+    private final List<String> published = new ArrayList<>();
+    private final List<List<String>> scriptKeys = new ArrayList<>();
+    private final ExecutorService otherThread = Executors.newSingleThreadExecutor();
+    private StringRedisTemplate stringRedisTemplate;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(), any()))
+                .thenAnswer(inv -> lockOrRenew(inv.getArgument(0), inv.getArgument(1), inv.getArgument(2)));
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any()))
+                .thenAnswer(inv -> unlock(inv.getArgument(1), inv.getArgument(2), inv.getArgument(4)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        otherThread.shutdownNow();
+    }
+
+    @Test
+    void reentrantLockIsReleasedAfterMatchingUnlocks() throws Exception {
+        ILock lock = new SimpleRedisLock(NAME, stringRedisTemplate);
+        assertThat(lock.tryLock(10)).isTrue();
+        assertThat(lock.tryLock(10)).isTrue();
+        assertThat(inOtherThread(() -> new SimpleRedisLock(NAME, stringRedisTemplate).tryLock(10))).isFalse();
+
+        lock.unLock();
+        //还剩一次重入，锁仍被持有，不发送释放通知
+        assertThat(inOtherThread(() -> new SimpleRedisLock(NAME, stringRedisTemplate).tryLock(10))).isFalse();
+        assertThat(published).isEmpty();
+
+        lock.unLock();
+        assertThat(published).containsExactly(LOCK_CHANNEL + NAME);
+        assertThat(inOtherThread(() -> new SimpleRedisLock(NAME, stringRedisTemplate).tryLock(10))).isTrue();
+    }
+
+    @Test
+    void unlockByOtherThreadKeepsLock() throws Exception {
+        ILock lock = new SimpleRedisLock(NAME, stringRedisTemplate);
+        assertThat(lock.tryLock(10)).isTrue();
+        inOtherThread(() -> {
+            new SimpleRedisLock(NAME, stringRedisTemplate).unLock();
+            return null;
+        });
+        assertThat(published).isEmpty();
+        assertThat(inOtherThread(() -> new SimpleRedisLock(NAME, stringRedisTemplate).tryLock(10))).isFalse();
+        lock.unLock();
+        assertThat(published).hasSize(1);
+    }
+
+    @Test
+    void scriptsOnlyTouchTheLockKey() {
+        ILock lock = new SimpleRedisLock(NAME, stringRedisTemplate);
+        lock.tryLock(10);
+        lock.unLock();
+        //释放通知的频道不作为key传入，集群模式下不会跨slot
+        assertThat(scriptKeys).isNotEmpty().allSatisfy(keys -> assertThat(keys).containsExactly("lock:" + NAME));
+    }
+
+    private <T> T inOtherThread(Callable<T> task) throws Exception {
+        return otherThread.submit(task).get();
+    }
+
+    //lock.lua和renewLock.lua都只有两个参数，按脚本内容区分
+    private synchronized Long lockOrRenew(RedisScript<Long> script, List<String> keys, Object threadId) {
+        scriptKeys.add(keys);
+        Map<String, Integer> hash = hashes.computeIfAbsent(keys.get(0), key -> new HashMap<>());
+        if (script.getScriptAsString().contains("pttl")) {
+            if (hash.isEmpty() || hash.containsKey(threadId.toString())) {
+                hash.merge(threadId.toString(), 1, Integer::sum);
+                return null;
+            }
+            return 1000L;
+        }
+        return hash.containsKey(threadId.toString()) ? 1L : 0L;
+    }
+
+    private synchronized Long unlock(List<String> keys, Object threadId, Object channel) {
+        scriptKeys.add(keys);
+        Map<String, Integer> hash = hashes.computeIfAbsent(keys.get(0), key -> new HashMap<>());
+        Integer count = hash.get(threadId.toString());
+        if (count == null) {
+            return null;
+        }
+        if (count > 1) {
+            hash.put(threadId.toString(), count - 1);
+            return 0L;
+        }
+        hash.clear();
+        published.add(channel.toString());
+        return 1L;
+    }
+}